@@ -0,0 +1,959 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A sample implementation of asynchronous API requests. This class provides
+ * the ability to execute API methods and have the call return immediately,
+ * without blocking the calling thread. This is necessary when accessing the
+ * API in the UI thread, for instance. The request response is returned to 
+ * the caller via a callback interface, which the developer must implement.
+ *
+ * Requests are queued on a RequestScheduler and run by a small pool of
+ * worker threads, interactive requests first and background requests
+ * (e.g. prefetching) last. Background requests can be paused, and give
+ * their worker up between attempts when more urgent requests are waiting.
+ * Before each call the request waits for the runner's rate limiters, which
+ * allow a given rate per application and per access token and slow down
+ * when Facebook reports throttling. Requests waiting for the rate limiters
+ * or before a retry are requeued with a delay, so they never hold a worker
+ * while waiting.
+ *
+ * When reauthorization is enabled, a request failing because the access
+ * token expired holds back the runner's other requests while the token is
+ * refreshed once, then all of them are replayed with the new token.
+ *
+ * Listener callbacks are invoked by the worker thread, or delivered through
+ * a Handler or Executor given to setCallbackHandler() or
+ * setCallbackExecutor(), e.g. to update the UI directly. Deliveries reuse
+ * pooled objects, and may be batched so that several completions reach the
+ * UI thread in a single hop.
+ *
+ * @see RequestListener
+ *        The callback interface.
+ *
+ * @author  Jim Brusstar (jimbru@fb.com),
+ *          Yariv Sadan (yariv@fb.com),
+ *          Luke Shepard (lshepard@fb.com)
+ */
+public class AsyncFacebookRunner {
+
+    Facebook fb;
+
+    private volatile RetryPolicy mRetryPolicy = new RetryPolicy();
+    private final RetryBudget mRetryBudget = new RetryBudget();
+    private final RequestThrottle mThrottle = new RequestThrottle();
+
+    private final RequestScheduler mScheduler;
+
+    // requests waiting for a token refresh; guarded by mReauthLock
+    private final Object mReauthLock = new Object();
+    private final List<RequestTask> mReauthTasks = new ArrayList<RequestTask>();
+    private boolean mReauthInProgress;
+    private int mReauthGeneration;
+    private volatile Context mReauthContext;
+    private volatile Handler mReauthHandler;
+    // Time after which held back requests resume if the token refresh did
+    // not report back.
+    private static final long REAUTH_TIMEOUT = 60L * 1000L;
+
+    private static final int CALLBACK_COMPLETE = 0;
+    private static final int CALLBACK_IO_EXCEPTION = 1;
+    private static final int CALLBACK_FILE_NOT_FOUND = 2;
+    private static final int CALLBACK_TIMEOUT = 3;
+    private static final int CALLBACK_MALFORMED_URL = 4;
+    private static final int CALLBACK_FACEBOOK_ERROR = 5;
+
+    private static final int MAX_POOLED_DELIVERIES = 16;
+
+    private volatile Executor mCallbackExecutor;
+    private volatile boolean mBatchCallbacks;
+    // unused deliveries and deliveries waiting for a batch, as linked lists;
+    // guarded by mDeliveryLock
+    private final Object mDeliveryLock = new Object();
+    private Delivery mDeliveryPool;
+    private int mDeliveryPoolSize;
+    private Delivery mBatchHead;
+    private Delivery mBatchTail;
+    private boolean mBatchScheduled;
+
+    public AsyncFacebookRunner(Facebook fb) {
+        this(fb, new RequestScheduler());
+    }
+
+    /**
+     * Create a runner whose requests are run by the given scheduler, e.g.
+     * to share one pool of worker threads between several runners.
+     */
+    public AsyncFacebookRunner(Facebook fb, RequestScheduler scheduler) {
+        this.fb = fb;
+        mScheduler = scheduler;
+    }
+
+    public RequestScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Hold back requests made with PRIORITY_BACKGROUND, e.g. while the user
+     * is interacting with a screen that needs the network. Background
+     * requests already running stop after their current attempt.
+     */
+    public void pauseBackgroundRequests() {
+        mScheduler.pauseBackground();
+    }
+
+    public void resumeBackgroundRequests() {
+        mScheduler.resumeBackground();
+    }
+
+    /**
+     * Set the policy used to retry requests that failed because of a
+     * network error or a temporary Facebook error. By default only GET
+     * requests are retried, up to 3 attempts. Pass null to disable retries.
+     *
+     * Retries of all requests made through this runner share a single
+     * budget, so that a Facebook outage is not made worse by the runner
+     * multiplying its requests.
+     *
+     * @param retryPolicy
+     *            the policy to use, or null to never retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Set the limiter applied to all requests of the application, keyed by
+     * application id. Defaults to 20 requests per second with bursts of 40.
+     * Pass null to disable application rate limiting.
+     */
+    public void setAppRateLimiter(RateLimiter rateLimiter) {
+        mThrottle.setAppRateLimiter(rateLimiter);
+    }
+
+    public RateLimiter getAppRateLimiter() {
+        return mThrottle.getAppRateLimiter();
+    }
+
+    /**
+     * Set the limiter applied to the requests of each user, keyed by access
+     * token. Defaults to 5 requests per second with bursts of 10. Pass null
+     * to disable per user rate limiting.
+     */
+    public void setTokenRateLimiter(RateLimiter rateLimiter) {
+        mThrottle.setTokenRateLimiter(rateLimiter);
+    }
+
+    public RateLimiter getTokenRateLimiter() {
+        return mThrottle.getTokenRateLimiter();
+    }
+
+    /**
+     * Refresh the access token through the Facebook app when a request fails
+     * because the token is invalid or expired, and replay the request with
+     * the new token. Requests started while the token is refreshed wait for
+     * it instead of failing too. If the refresh fails, each request reports
+     * its original response. See Facebook.extendAccessToken().
+     *
+     * @param context
+     *            Used to bind to the token refresh service; its application
+     *            context is retained. Pass null to disable reauthorization,
+     *            which is the default.
+     */
+    public void setReauthorizationContext(Context context) {
+        if (context == null) {
+            mReauthContext = null;
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        // the refresh service answers on the thread binding it, which needs
+        // a Looper: use the main thread
+        mReauthHandler = new Handler(appContext.getMainLooper());
+        mReauthContext = appContext;
+    }
+
+    /**
+     * Deliver listener callbacks through the given executor instead of
+     * invoking them in the worker thread.
+     *
+     * @param executor
+     *            the executor running the callbacks, or null to invoke them
+     *            in the worker thread, which is the default
+     */
+    public void setCallbackExecutor(Executor executor) {
+        mCallbackExecutor = executor;
+    }
+
+    /**
+     * Deliver listener callbacks by posting them to the given handler, e.g.
+     * one of the main thread, instead of invoking them in the worker thread.
+     *
+     * @param handler
+     *            the handler running the callbacks, or null to invoke them
+     *            in the worker thread, which is the default
+     */
+    public void setCallbackHandler(final Handler handler) {
+        if (handler == null) {
+            mCallbackExecutor = null;
+            return;
+        }
+        mCallbackExecutor = new Executor() {
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    /**
+     * Deliver the callbacks of requests completing while earlier callbacks
+     * wait for the callback executor in a single task, so that a burst of
+     * completions reaches the UI thread in one hop. Has no effect unless a
+     * callback executor or handler is set.
+     */
+    public void setBatchCallbacks(boolean batch) {
+        mBatchCallbacks = batch;
+    }
+
+    /**
+     * Invalidate the current user session by removing the access token in
+     * memory, clearing the browser cookies, and calling auth.expireSession
+     * through the API. The application will be notified when logout is
+     * complete via the callback interface.
+     *
+     * Note that this method is asynchronous and the callback will be invoked
+     * in a background thread; operations that affect the UI will need to be
+     * posted to the UI thread or an appropriate handler.
+     *
+     * @param context
+     *            The Android context in which the logout should be called: it
+     *            should be the same context in which the login occurred in
+     *            order to clear any stored cookies
+     * @param listener
+     *            Callback interface to notify the application when the request
+     *            has completed.
+     * @param state
+     *            An arbitrary object used to identify the request when it
+     *            returns to the callback. This has no effect on the request
+     *            itself.
+     */
+    public void logout(final Context context,
+                       final RequestListener listener,
+                       final Object state) {
+        mScheduler.execute(new Runnable() {
+            public void run() {
+                try {
+                    String response = fb.logout(context);
+                    if ((response.length() == 0 || response.equals("false")) && listener != null){
+                        deliver(CALLBACK_FACEBOOK_ERROR, listener, new FacebookError(
+                                "auth.expireSession failed"), state);
+                        return;
+                    }
+                    deliver(CALLBACK_COMPLETE, listener, response, state);
+                } catch (FileNotFoundException e) {
+                    deliver(CALLBACK_FILE_NOT_FOUND, listener, e, state);
+                } catch (SocketTimeoutException e) {
+                    deliver(CALLBACK_TIMEOUT, listener, e, state);
+                } catch (MalformedURLException e) {
+                    deliver(CALLBACK_MALFORMED_URL, listener, e, state);
+                } catch (IOException e) {
+                    deliver(CALLBACK_IO_EXCEPTION, listener, e, state);
+                }
+            }
+        }, RequestScheduler.PRIORITY_INTERACTIVE);
+    }
+
+    public void logout(final Context context, final RequestListener listener) {
+        logout(context, listener, /* state */ null);
+    }
+
+    /**
+     * Make a request to Facebook's old (pre-graph) API with the given
+     * parameters. One of the parameter keys must be "method" and its value
+     * should be a valid REST server API method.
+     *
+     * See http://developers.facebook.com/docs/reference/rest/
+     *
+     * Note that this method is asynchronous and the callback will be invoked
+     * in a background thread; operations that affect the UI will need to be
+     * posted to the UI thread or an appropriate handler.
+     *
+     * Example:
+     * <code>
+     *  Bundle parameters = new Bundle();
+     *  parameters.putString("method", "auth.expireSession", new Listener());
+     *  String response = request(parameters);
+     * </code>
+     *
+     * @param parameters
+     *            Key-value pairs of parameters to the request. Refer to the
+     *            documentation: one of the parameters must be "method".
+     * @param listener
+     *            Callback interface to notify the application when the request
+     *            has completed.
+     * @param state
+     *            An arbitrary object used to identify the request when it
+     *            returns to the callback. This has no effect on the request
+     *            itself.
+     */
+    public void request(Bundle parameters,
+                        RequestListener listener,
+                        final Object state) {
+        request(null, parameters, "GET", listener, state);
+    }
+
+    public void request(Bundle parameters, RequestListener listener) {
+        request(null, parameters, "GET", listener, /* state */ null);
+    }
+
+    /**
+     * Make a request to the Facebook Graph API without any parameters.
+     *
+     * See http://developers.facebook.com/docs/api
+     *
+     * Note that this method is asynchronous and the callback will be invoked
+     * in a background thread; operations that affect the UI will need to be
+     * posted to the UI thread or an appropriate handler.
+     *
+     * @param graphPath
+     *            Path to resource in the Facebook graph, e.g., to fetch data
+     *            about the currently logged authenticated user, provide "me",
+     *            which will fetch http://graph.facebook.com/me
+     * @param listener
+     *            Callback interface to notify the application when the request
+     *            has completed.
+     * @param state
+     *            An arbitrary object used to identify the request when it
+     *            returns to the callback. This has no effect on the request
+     *            itself.
+     */
+    public void request(String graphPath,
+                        RequestListener listener,
+                        final Object state) {
+        request(graphPath, RequestParams.EMPTY, "GET", listener, state);
+    }
+
+    public void request(String graphPath, RequestListener listener) {
+        request(graphPath, RequestParams.EMPTY, "GET", listener, /* state */ null);
+    }
+
+    /**
+     * Make a request to the Facebook Graph API with the given string parameters
+     * using an HTTP GET (default method).
+     *
+     * See http://developers.facebook.com/docs/api
+     *
+     * Note that this method is asynchronous and the callback will be invoked
+     * in a background thread; operations that affect the UI will need to be
+     * posted to the UI thread or an appropriate handler.
+     *
+     * @param graphPath
+     *            Path to resource in the Facebook graph, e.g., to fetch data
+     *            about the currently logged authenticated user, provide "me",
+     *            which will fetch http://graph.facebook.com/me
+     * @param parameters
+     *            key-value string parameters, e.g. the path "search" with
+     *            parameters "q" : "facebook" would produce a query for the
+     *            following graph resource:
+     *            https://graph.facebook.com/search?q=facebook
+     * @param listener
+     *            Callback interface to notify the application when the request
+     *            has completed.
+     * @param state
+     *            An arbitrary object used to identify the request when it
+     *            returns to the callback. This has no effect on the request
+     *            itself.
+     */
+    public void request(String graphPath,
+                        Bundle parameters,
+                        RequestListener listener,
+                        final Object state) {
+        request(graphPath, parameters, "GET", listener, state);
+    }
+
+    public void request(String graphPath,
+                        Bundle parameters,
+                        RequestListener listener) {
+        request(graphPath, parameters, "GET", listener, /* state */ null);
+    }
+
+    /**
+     * Make a request to the Facebook Graph API with the given HTTP method and
+     * string parameters. Note that binary data parameters (e.g. pictures) are
+     * not yet supported by this helper function.
+     *
+     * See http://developers.facebook.com/docs/api
+     *
+     * Note that this method is asynchronous and the callback will be invoked
+     * in a background thread; operations that affect the UI will need to be
+     * posted to the UI thread or an appropriate handler.
+     *
+     * @param graphPath
+     *            Path to resource in the Facebook graph, e.g., to fetch data
+     *            about the currently logged authenticated user, provide "me",
+     *            which will fetch http://graph.facebook.com/me
+     * @param parameters
+     *            key-value string parameters, e.g. the path "search" with
+     *            parameters {"q" : "facebook"} would produce a query for the
+     *            following graph resource:
+     *            https://graph.facebook.com/search?q=facebook
+     * @param httpMethod
+     *            http verb, e.g. "POST", "DELETE"
+     * @param listener
+     *            Callback interface to notify the application when the request
+     *            has completed.
+     * @param state
+     *            An arbitrary object used to identify the request when it
+     *            returns to the callback. This has no effect on the request
+     *            itself.
+     */
+    public void request(String graphPath,
+                        Bundle parameters,
+                        String httpMethod,
+                        RequestListener listener,
+                        Object state) {
+        request(graphPath, parameters, httpMethod, listener, state,
+                RequestScheduler.PRIORITY_NORMAL);
+    }
+
+    /**
+     * Make a request to the Facebook Graph API with the given HTTP method,
+     * string parameters and priority.
+     *
+     * Requests are started in priority order: use PRIORITY_INTERACTIVE for
+     * requests the user is waiting for and PRIORITY_BACKGROUND for bulk or
+     * prefetch requests, which may be paused and will step aside between
+     * attempts when more urgent requests are waiting.
+     *
+     * See request(String, Bundle, String, RequestListener, Object) for the
+     * other parameters.
+     *
+     * @param priority
+     *            One of RequestScheduler.PRIORITY_INTERACTIVE,
+     *            PRIORITY_NORMAL or PRIORITY_BACKGROUND.
+     */
+    public void request(String graphPath,
+                        Bundle parameters,
+                        String httpMethod,
+                        RequestListener listener,
+                        Object state,
+                        int priority) {
+        request(graphPath, Util.toRequestParams(parameters), httpMethod,
+                listener, state, priority);
+    }
+
+    /**
+     * Make a request to the Facebook Graph API, or to the old REST API if
+     * graphPath is null, with the given HTTP method, parameters and
+     * priority. Byte array parameters are uploaded as files.
+     *
+     * See request(String, Bundle, String, RequestListener, Object, int) for
+     * the other parameters.
+     *
+     * @param parameters
+     *            Parameters of the request; they are not modified.
+     */
+    public void request(String graphPath,
+                        RequestParams parameters,
+                        String httpMethod,
+                        RequestListener listener,
+                        Object state,
+                        int priority) {
+        mScheduler.execute(new RequestTask(graphPath, parameters, httpMethod,
+                listener, state, priority), priority);
+    }
+
+    public void request(String graphPath,
+                        RequestParams parameters,
+                        String httpMethod,
+                        RequestListener listener,
+                        Object state) {
+        request(graphPath, parameters, httpMethod, listener, state,
+                RequestScheduler.PRIORITY_NORMAL);
+    }
+
+    /**
+     * A queued request. The number of attempts made is kept when a
+     * background request yields its worker, so it resumes where it stopped.
+     */
+    private class RequestTask implements Runnable, RequestAttempts.Call {
+
+        private final String mGraphPath;
+        private final RequestParams mParameters;
+        private final String mHttpMethod;
+        private final RequestListener mListener;
+        private final Object mState;
+        private final int mPriority;
+        private RequestAttempts mAttempts;
+        // whether the request already waited for a token refresh, and the
+        // response to report if that refresh failed
+        private boolean mReauthorized;
+        private String mReauthResponse;
+        private boolean mReauthFailed;
+        private final long mQueuedTime = SystemClock.elapsedRealtime();
+        private long mStartTime;
+
+        RequestTask(String graphPath, RequestParams parameters,
+                    String httpMethod, RequestListener listener, Object state,
+                    int priority) {
+            mGraphPath = graphPath;
+            mParameters = parameters;
+            mHttpMethod = httpMethod;
+            mListener = listener;
+            mState = state;
+            mPriority = priority;
+        }
+
+        public void run() {
+            if (mReauthFailed) {
+                onCompleted(false);
+                deliver(CALLBACK_COMPLETE, mListener, mReauthResponse, mState);
+                return;
+            }
+            try {
+                String resp = execute();
+                if (resp != null) {
+                    onCompleted(GraphTransport.parseError(resp) == null);
+                    deliver(CALLBACK_COMPLETE, mListener, resp, mState);
+                }
+            } catch (FileNotFoundException e) {
+                onCompleted(false);
+                deliver(CALLBACK_FILE_NOT_FOUND, mListener, e, mState);
+            } catch (SocketTimeoutException e) {
+                onCompleted(false);
+                deliver(CALLBACK_TIMEOUT, mListener, e, mState);
+            } catch (MalformedURLException e) {
+                onCompleted(false);
+                deliver(CALLBACK_MALFORMED_URL, mListener, e, mState);
+            } catch (IOException e) {
+                onCompleted(false);
+                deliver(CALLBACK_IO_EXCEPTION, mListener, e, mState);
+            }
+        }
+
+        private void onCompleted(boolean success) {
+            if (!SessionEvents.hasSessionListeners()) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            long startTime = (mStartTime != 0) ? mStartTime : now;
+            int attempts = (mAttempts != null) ? mAttempts.getAttempts() : 0;
+            SessionEvents.onRequestCompleted(mGraphPath, mHttpMethod, success,
+                    attempts, startTime - mQueuedTime, now - startTime);
+        }
+
+        /**
+         * Make the request, making it again according to the retry policy
+         * while it fails with a retryable network or Facebook error. The
+         * response or error of the last attempt is returned to the caller.
+         *
+         * @return the response, or null if the request was requeued to let
+         *         more urgent requests run first, to wait for the rate
+         *         limits or before a retry, or to wait for a token refresh
+         */
+        private String execute() throws IOException {
+            if (mAttempts == null) {
+                mAttempts = new RequestAttempts(mHttpMethod, mRetryPolicy,
+                        mRetryBudget, mThrottle);
+            }
+            if (mScheduler.shouldYield(mPriority)) {
+                mScheduler.requeue(this, mPriority);
+                return null;
+            }
+            if (waitForReauth(this)) {
+                return null;
+            }
+            if (mAttempts.getAttempts() == 0) {
+                mStartTime = SystemClock.elapsedRealtime();
+            }
+            String appId = fb.getAppId();
+            String token = fb.getAccessToken();
+            // wait for the rate limits and retries off the worker
+            long delay = mAttempts.tryAcquire(appId, token);
+            if (delay > 0) {
+                mScheduler.requeue(this, mPriority, delay);
+                return null;
+            }
+            String response = mAttempts.attempt(appId, token, this);
+            if (response == null) {
+                mScheduler.requeue(this, mPriority, mAttempts.getDelay());
+                return null;
+            }
+            FacebookError error = mAttempts.getLastError();
+            if (error != null && error.isTokenError()) {
+                fb.onTokenExpired(token);
+                if (reauthorize(this, token, response)) {
+                    return null;
+                }
+            }
+            return response;
+        }
+
+        public String call() throws IOException {
+            return fb.request(mGraphPath, mParameters, mHttpMethod);
+        }
+    }
+
+    /**
+     * Invoke a listener callback, directly or through the callback executor.
+     */
+    private void deliver(int callback, RequestListener listener,
+                         Object result, Object state) {
+        if (listener == null) {
+            return;
+        }
+        Executor executor = mCallbackExecutor;
+        if (executor == null) {
+            invoke(callback, listener, result, state);
+            return;
+        }
+        boolean batch = mBatchCallbacks;
+        Delivery delivery;
+        synchronized (mDeliveryLock) {
+            delivery = mDeliveryPool;
+            if (delivery != null) {
+                mDeliveryPool = delivery.mNext;
+                mDeliveryPoolSize--;
+                delivery.mNext = null;
+            } else {
+                delivery = new Delivery();
+            }
+            delivery.mCallback = callback;
+            delivery.mListener = listener;
+            delivery.mResult = result;
+            delivery.mState = state;
+            if (batch) {
+                if (mBatchTail == null) {
+                    mBatchHead = delivery;
+                } else {
+                    mBatchTail.mNext = delivery;
+                }
+                mBatchTail = delivery;
+                if (mBatchScheduled) {
+                    // the scheduled batch picks it up
+                    return;
+                }
+                mBatchScheduled = true;
+            }
+        }
+        executor.execute(batch ? mDeliverBatch : delivery);
+    }
+
+    private static void invoke(int callback, RequestListener listener,
+                               Object result, Object state) {
+        switch (callback) {
+            case CALLBACK_COMPLETE:
+                listener.onComplete((String) result, state);
+                break;
+            case CALLBACK_FILE_NOT_FOUND:
+                listener.onFileNotFoundException(
+                        (FileNotFoundException) result, state);
+                break;
+            case CALLBACK_TIMEOUT:
+                if (listener instanceof TimeoutListener) {
+                    ((TimeoutListener) listener).onTimeoutException(
+                            (SocketTimeoutException) result, state);
+                } else {
+                    listener.onIOException((IOException) result, state);
+                }
+                break;
+            case CALLBACK_MALFORMED_URL:
+                listener.onMalformedURLException(
+                        (MalformedURLException) result, state);
+                break;
+            case CALLBACK_FACEBOOK_ERROR:
+                listener.onFacebookError((FacebookError) result, state);
+                break;
+            default:
+                listener.onIOException((IOException) result, state);
+                break;
+        }
+    }
+
+    /**
+     * Return a delivery to the pool once its callback was invoked.
+     */
+    private void recycle(Delivery delivery) {
+        delivery.mListener = null;
+        delivery.mResult = null;
+        delivery.mState = null;
+        synchronized (mDeliveryLock) {
+            if (mDeliveryPoolSize < MAX_POOLED_DELIVERIES) {
+                delivery.mNext = mDeliveryPool;
+                mDeliveryPool = delivery;
+                mDeliveryPoolSize++;
+            }
+        }
+    }
+
+    /**
+     * A callback waiting for the callback executor.
+     */
+    private final class Delivery implements Runnable {
+        int mCallback;
+        RequestListener mListener;
+        Object mResult;
+        Object mState;
+        Delivery mNext;
+
+        public void run() {
+            try {
+                invoke(mCallback, mListener, mResult, mState);
+            } finally {
+                recycle(this);
+            }
+        }
+    }
+
+    /**
+     * Invokes the callbacks of the current batch, in order.
+     */
+    private final Runnable mDeliverBatch = new Runnable() {
+        public void run() {
+            Delivery delivery;
+            synchronized (mDeliveryLock) {
+                delivery = mBatchHead;
+                mBatchHead = null;
+                mBatchTail = null;
+                mBatchScheduled = false;
+            }
+            while (delivery != null) {
+                Delivery next = delivery.mNext;
+                delivery.mNext = null;
+                delivery.run();
+                delivery = next;
+            }
+        }
+    };
+
+    /**
+     * Hold a request back while a token refresh is in progress, unless it
+     * already waited for one.
+     *
+     * @return true if the task will be run again after the refresh
+     */
+    private boolean waitForReauth(RequestTask task) {
+        synchronized (mReauthLock) {
+            if (!mReauthInProgress || task.mReauthorized) {
+                return false;
+            }
+            mReauthTasks.add(task);
+            return true;
+        }
+    }
+
+    /**
+     * Hold back a request that failed because of its access token and
+     * refresh the token, unless another refresh is in progress or the token
+     * already changed.
+     *
+     * @return true if the task will be run again with a new token, false if
+     *         its response must be reported
+     */
+    private boolean reauthorize(RequestTask task, String token,
+                                String response) {
+        final Context context = mReauthContext;
+        if (context == null || task.mReauthorized) {
+            return false;
+        }
+        synchronized (mReauthLock) {
+            task.mReauthResponse = response;
+            if (!mReauthInProgress) {
+                String current = fb.getAccessToken();
+                if (current != null && !current.equals(token)) {
+                    // refreshed since the request was made
+                    task.mReauthorized = true;
+                    mScheduler.requeue(task, task.mPriority);
+                    return true;
+                }
+                mReauthInProgress = true;
+                final Handler handler = mReauthHandler;
+                final ReauthListener listener =
+                        new ReauthListener(++mReauthGeneration, handler);
+                handler.post(new Runnable() {
+                    public void run() {
+                        if (!fb.extendAccessToken(context, listener)) {
+                            listener.onReauthFinished(false);
+                        }
+                    }
+                });
+                // never hold the requests back forever
+                handler.postDelayed(listener, REAUTH_TIMEOUT);
+            }
+            mReauthTasks.add(task);
+            return true;
+        }
+    }
+
+    /**
+     * Replay the requests held back for a token refresh or, if it failed,
+     * let those that already failed report their response.
+     *
+     * @param generation
+     *            the refresh that finished, ignored unless it is the one in
+     *            progress
+     */
+    private void onReauthFinished(int generation, boolean success) {
+        List<RequestTask> tasks;
+        synchronized (mReauthLock) {
+            if (!mReauthInProgress || generation != mReauthGeneration) {
+                return;
+            }
+            mReauthInProgress = false;
+            tasks = new ArrayList<RequestTask>(mReauthTasks);
+            mReauthTasks.clear();
+        }
+        Util.logd("Facebook-AsyncRunner", "Token refresh "
+                + (success ? "succeeded" : "failed") + ", resuming "
+                + tasks.size() + " requests");
+        for (RequestTask task : tasks) {
+            task.mReauthorized = true;
+            task.mReauthFailed = !success && task.mReauthResponse != null;
+            mScheduler.execute(task, task.mPriority);
+        }
+    }
+
+    /**
+     * Receives the result of a token refresh, and fails it when run as its
+     * timeout.
+     */
+    private final class ReauthListener
+            implements Facebook.ServiceListener, Runnable {
+
+        private final int mGeneration;
+        private final Handler mHandler;
+
+        ReauthListener(int generation, Handler handler) {
+            mGeneration = generation;
+            mHandler = handler;
+        }
+
+        void onReauthFinished(boolean success) {
+            mHandler.removeCallbacks(this);
+            AsyncFacebookRunner.this.onReauthFinished(mGeneration, success);
+        }
+
+        public void run() {
+            Util.logd("Facebook-AsyncRunner", "Token refresh timed out");
+            AsyncFacebookRunner.this.onReauthFinished(mGeneration, false);
+        }
+
+        public void onComplete(Bundle values) {
+            onReauthFinished(true);
+        }
+
+        public void onFacebookError(FacebookError e) {
+            onReauthFinished(false);
+        }
+
+        public void onError(Error e) {
+            onReauthFinished(false);
+        }
+    }
+
+
+    /**
+     * Callback interface for API requests.
+     *
+     * Each method includes a 'state' parameter that identifies the calling
+     * request. It will be set to the value passed when originally calling the
+     * request method, or null if none was passed.
+     */
+    public static interface RequestListener {
+
+        /**
+         * Called when a request completes with the given response.
+         *
+         * Executed by a background thread, unless a callback handler or
+         * executor is set: do not update the UI in this method otherwise.
+         */
+        public void onComplete(String response, Object state);
+
+        /**
+         * Called when a request has a network or request error.
+         *
+         * Executed by a background thread, unless a callback handler or
+         * executor is set: do not update the UI in this method otherwise.
+         */
+        public void onIOException(IOException e, Object state);
+
+        /**
+         * Called when a request fails because the requested resource is
+         * invalid or does not exist.
+         *
+         * Executed by a background thread, unless a callback handler or
+         * executor is set: do not update the UI in this method otherwise.
+         */
+        public void onFileNotFoundException(FileNotFoundException e,
+                                            Object state);
+
+        /**
+         * Called if an invalid graph path is provided (which may result in a
+         * malformed URL).
+         *
+         * Executed by a background thread, unless a callback handler or
+         * executor is set: do not update the UI in this method otherwise.
+         */
+        public void onMalformedURLException(MalformedURLException e,
+                                            Object state);
+
+        /**
+         * Called when the server-side Facebook method fails.
+         *
+         * Executed by a background thread, unless a callback handler or
+         * executor is set: do not update the UI in this method otherwise.
+         */
+        public void onFacebookError(FacebookError e, Object state);
+
+    }
+
+    /**
+     * Request listener told apart from other network errors when a request
+     * times out. Timeouts of plain RequestListeners are reported to
+     * onIOException().
+     */
+    public static interface TimeoutListener extends RequestListener {
+
+        /**
+         * Called when a request is abandoned because connecting or reading
+         * took longer than the timeouts configured for its endpoint.
+         *
+         * Executed by a background thread, unless a callback handler or
+         * executor is set: do not update the UI in this method otherwise.
+         */
+        public void onTimeoutException(SocketTimeoutException e, Object state);
+
+    }
+
+}
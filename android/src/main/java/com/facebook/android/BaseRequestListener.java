@@ -3,8 +3,9 @@ package com.facebook.android;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 
-public abstract class BaseRequestListener implements AsyncFacebookRunner.RequestListener{
+public abstract class BaseRequestListener implements AsyncFacebookRunner.TimeoutListener{
     @Override
     public abstract void onComplete(String response, Object state);
 
@@ -16,6 +17,11 @@ public abstract class BaseRequestListener implements AsyncFacebookRunner.Request
     public void onFileNotFoundException(FileNotFoundException e, Object state) {
     }
 
+    @Override
+    public void onTimeoutException(SocketTimeoutException e, Object state) {
+        onIOException(e, state);
+    }
+
     @Override
     public void onMalformedURLException(MalformedURLException e, Object state) {
     }
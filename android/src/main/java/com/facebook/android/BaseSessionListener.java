@@ -0,0 +1,22 @@
+package com.facebook.android;
+
+/**
+ * Session listener ignoring all events: override the methods of the events
+ * of interest.
+ */
+public abstract class BaseSessionListener implements SessionEvents.SessionListener {
+
+    public void onTokenRefreshed(String accessToken, long accessExpires) {
+    }
+
+    public void onTokenExpired(String accessToken) {
+    }
+
+    public void onPermissionsChanged(String[] permissions) {
+    }
+
+    public void onRequestCompleted(String graphPath, String httpMethod,
+                                   boolean success, int attempts,
+                                   long waitMillis, long durationMillis) {
+    }
+}
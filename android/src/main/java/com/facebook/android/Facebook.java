@@ -25,6 +25,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ResolveInfo;
 import android.content.pm.Signature;
+import android.net.Uri;
 import android.os.*;
 import android.text.TextUtils;
 import android.webkit.CookieSyncManager;
@@ -32,6 +33,12 @@ import android.webkit.CookieSyncManager;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Main Facebook object for interacting with the Facebook developer API.
@@ -67,19 +74,48 @@ public class Facebook {
     protected static String RESTSERVER_URL =
             "https://api.facebook.com/restserver.php";
 
-    private String mAccessToken = null;
-    private long mLastAccessUpdate = 0;
-    private long mAccessExpires = 0;
+    private final AtomicReference<SessionState> mSession =
+            new AtomicReference<SessionState>(SessionState.EMPTY);
+    // the last token reported expired to SessionEvents, shared by all the
+    // runners of this object
+    private final AtomicReference<String> mExpiredToken =
+            new AtomicReference<String>();
     private String mAppId;
+    private final GraphClient mClient;
+
+    // results of signature validations, by package name and version code;
+    // PackageInfo.lastUpdateTime is not available before API level 9, so
+    // the entries of a package are dropped when it is added, replaced or
+    // removed, as another package may then have the same name and version
+    private static final ConcurrentHashMap<String, Boolean> sValidatedPackages =
+            new ConcurrentHashMap<String, Boolean>();
+    // packages providing the components of resolved intents, by class name
+    private static final ConcurrentHashMap<String, String> sResolvedPackages =
+            new ConcurrentHashMap<String, String>();
+    // clears both caches on package changes; registered on first use
+    private static BroadcastReceiver sPackageReceiver;
+    // FB_APP_SIGNATURE decoded, created on first use
+    private static volatile byte[] sAppSignatureBytes;
 
     private Activity mAuthActivity;
     private String[] mAuthPermissions;
+    // permissions requested by the last authorization, sorted
+    private volatile String[] mPermissions = new String[0];
     private int mAuthActivityCode;
     private DialogListener mAuthDialogListener;
 
     // If the last time we extended the access token was more than 24 hours ago
     // we try to refresh the access token again.
-    final private long REFRESH_TOKEN_BARRIER = 24L * 60L * 60L * 1000L;
+    public static final long DEFAULT_REFRESH_TOKEN_BARRIER =
+            24L * 60L * 60L * 1000L;
+    private volatile long mRefreshTokenBarrier = DEFAULT_REFRESH_TOKEN_BARRIER;
+
+    // Time after which a token refresh that got no reply is abandoned.
+    private static final long TOKEN_REFRESH_TIMEOUT = 30L * 1000L;
+
+    // the token refresh in progress, if any; guarded by mRefreshLock
+    private final Object mRefreshLock = new Object();
+    private TokenRefreshServiceConnection mRefreshConnection;
 
     /**
      * Constructor for Facebook object.
@@ -95,6 +131,75 @@ public class Facebook {
                             "a Facebook object. See README for details.");
         }
         mAppId = appId;
+        // rate limits and retries are left to AsyncFacebookRunner, and
+        // asynchronous requests are never made through this client
+        mClient = new GraphClient(appId, null, null) {
+            // read for each request, as they may be changed for testing
+            @Override
+            public String getGraphBaseUrl() {
+                return GRAPH_BASE_URL;
+            }
+
+            @Override
+            public String getRestServerUrl() {
+                return RESTSERVER_URL;
+            }
+        };
+        mClient.setRetryPolicy(null);
+    }
+
+    /**
+     * Prepare this object for use: restore the saved session, if asked to,
+     * and validate the signature of the Facebook app used by authorize()
+     * and extendAccessToken(), so that they find the result cached.
+     *
+     * Note that this method blocks on disk and package manager access, so
+     * do not call it in a UI thread; see initializeAsync().
+     *
+     * @param context
+     *            The Android context used to read the session and query the
+     *            package manager.
+     * @param restoreSession
+     *            Whether to restore the session saved by SessionStore.
+     * @return whether a valid session was restored
+     */
+    public boolean initialize(Context context, boolean restoreSession) {
+        boolean sessionValid = restoreSession
+                && SessionStore.restore(context, this);
+        validateActivityIntent(context, newProxyAuthIntent(mAppId, null));
+        validateServiceIntent(context, newTokenRefreshIntent());
+        return sessionValid;
+    }
+
+    /**
+     * Run initialize() in a background thread, keeping it off the startup
+     * path of the application.
+     *
+     * Until the callback is run, isSessionValid() may return false and
+     * authorize() may validate the Facebook app itself. A session set in
+     * the meantime, e.g. by authorize() or logout(), is not replaced by the
+     * restored one.
+     *
+     * @param callback
+     *            Run in the background thread once the object is
+     *            initialized, or null.
+     */
+    public void initializeAsync(Context context, final boolean restoreSession,
+                                final Runnable callback) {
+        final Context appContext = context.getApplicationContext();
+        Thread thread = new Thread("Facebook-Init") {
+            @Override
+            public void run() {
+                android.os.Process.setThreadPriority(
+                        android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                initialize(appContext, restoreSession);
+                if (callback != null) {
+                    callback.run();
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
@@ -215,14 +320,7 @@ public class Facebook {
     private boolean startSingleSignOn(Activity activity, String applicationId,
                                       String[] permissions, int activityCode) {
         boolean didSucceed = true;
-        Intent intent = new Intent();
-
-        intent.setClassName("com.facebook.katana",
-                "com.facebook.katana.ProxyAuth");
-        intent.putExtra("client_id", applicationId);
-        if (permissions.length > 0) {
-            intent.putExtra("scope", TextUtils.join(",", permissions));
-        }
+        Intent intent = newProxyAuthIntent(applicationId, permissions);
 
         // Verify that the application whose package name is
         // com.facebook.katana.ProxyAuth
@@ -243,6 +341,27 @@ public class Facebook {
         return didSucceed;
     }
 
+    private static Intent newProxyAuthIntent(String applicationId,
+                                             String[] permissions) {
+        Intent intent = new Intent();
+
+        intent.setClassName("com.facebook.katana",
+                "com.facebook.katana.ProxyAuth");
+        intent.putExtra("client_id", applicationId);
+        if (permissions != null && permissions.length > 0) {
+            intent.putExtra("scope", TextUtils.join(",", permissions));
+        }
+        return intent;
+    }
+
+    private static Intent newTokenRefreshIntent() {
+        Intent intent = new Intent();
+
+        intent.setClassName("com.facebook.katana",
+                "com.facebook.katana.platform.TokenRefreshService");
+        return intent;
+    }
+
     /**
      * Helper to validate an activity intent by resolving and checking the
      * provider's package signature.
@@ -253,15 +372,20 @@ public class Facebook {
      * 	signatures match.
      */
     private boolean validateActivityIntent(Context context, Intent intent) {
-        ResolveInfo resolveInfo =
-                context.getPackageManager().resolveActivity(intent, 0);
-        if (resolveInfo == null) {
-            return false;
+        watchPackageChanges(context);
+        String className = intent.getComponent().getClassName();
+        String packageName = sResolvedPackages.get(className);
+        if (packageName == null) {
+            ResolveInfo resolveInfo =
+                    context.getPackageManager().resolveActivity(intent, 0);
+            if (resolveInfo == null) {
+                return false;
+            }
+            packageName = resolveInfo.activityInfo.packageName;
+            sResolvedPackages.put(className, packageName);
         }
 
-        return validateAppSignatureForPackage(
-                context,
-                resolveInfo.activityInfo.packageName);
+        return validateAppSignatureForPackage(context, className, packageName);
     }
 
 
@@ -275,42 +399,126 @@ public class Facebook {
      * 	signatures match.
      */
     private boolean validateServiceIntent(Context context, Intent intent) {
-        ResolveInfo resolveInfo =
-                context.getPackageManager().resolveService(intent, 0);
-        if (resolveInfo == null) {
-            return false;
+        watchPackageChanges(context);
+        String className = intent.getComponent().getClassName();
+        String packageName = sResolvedPackages.get(className);
+        if (packageName == null) {
+            ResolveInfo resolveInfo =
+                    context.getPackageManager().resolveService(intent, 0);
+            if (resolveInfo == null) {
+                return false;
+            }
+            packageName = resolveInfo.serviceInfo.packageName;
+            sResolvedPackages.put(className, packageName);
         }
 
-        return validateAppSignatureForPackage(
-                context,
-                resolveInfo.serviceInfo.packageName);
+        return validateAppSignatureForPackage(context, className, packageName);
+    }
+
+    /**
+     * Start forgetting the cached resolutions and signature validations of
+     * packages that are installed, updated or uninstalled, before anything
+     * is cached.
+     */
+    private static synchronized void watchPackageChanges(Context context) {
+        if (sPackageReceiver != null) {
+            return;
+        }
+        sPackageReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                if (data != null) {
+                    forgetPackage(data.getSchemeSpecificPart());
+                }
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.getApplicationContext().registerReceiver(sPackageReceiver,
+                filter);
+    }
+
+    private static void forgetPackage(String packageName) {
+        String prefix = packageName + ':';
+        for (String key : sValidatedPackages.keySet()) {
+            if (key.startsWith(prefix)) {
+                sValidatedPackages.remove(key);
+            }
+        }
+        for (String className : sResolvedPackages.keySet()) {
+            sResolvedPackages.remove(className, packageName);
+        }
+    }
+
+    private static byte[] getAppSignatureBytes() {
+        byte[] bytes = sAppSignatureBytes;
+        if (bytes == null) {
+            bytes = new byte[FB_APP_SIGNATURE.length() / 2];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) ((Character.digit(FB_APP_SIGNATURE.charAt(2 * i), 16) << 4)
+                        | Character.digit(FB_APP_SIGNATURE.charAt(2 * i + 1), 16));
+            }
+            sAppSignatureBytes = bytes;
+        }
+        return bytes;
     }
 
     /**
      * Query the signature for the application that would be invoked by the
      * given intent and verify that it matches the FB application's signature.
      *
+     * The result is cached until the package is updated to another version.
+     *
      * @param context
+     * @param className the resolved component, forgotten if the package is
+     *            no longer installed
      * @param packageName
      * @return true if the app's signature matches the expected signature.
      */
     private boolean validateAppSignatureForPackage(Context context,
+                                                   String className,
                                                    String packageName) {
 
+        PackageManager packageManager = context.getPackageManager();
         PackageInfo packageInfo;
         try {
-            packageInfo = context.getPackageManager().getPackageInfo(
+            // much cheaper than a lookup with the signatures
+            packageInfo = packageManager.getPackageInfo(packageName, 0);
+        } catch (NameNotFoundException e) {
+            sResolvedPackages.remove(className);
+            return false;
+        }
+        Boolean cached = sValidatedPackages.get(
+                packageName + ':' + packageInfo.versionCode);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            packageInfo = packageManager.getPackageInfo(
                     packageName, PackageManager.GET_SIGNATURES);
         } catch (NameNotFoundException e) {
+            sResolvedPackages.remove(className);
             return false;
         }
 
+        // comparing the raw bytes avoids hex encoding every signature
+        byte[] expected = getAppSignatureBytes();
+        boolean valid = false;
         for (Signature signature : packageInfo.signatures) {
-            if (signature.toCharsString().equals(FB_APP_SIGNATURE)) {
-                return true;
+            if (Arrays.equals(signature.toByteArray(), expected)) {
+                valid = true;
+                break;
             }
         }
-        return false;
+        // keyed by the version whose signatures were checked
+        sValidatedPackages.put(packageName + ':' + packageInfo.versionCode,
+                valid);
+        return valid;
     }
 
     /**
@@ -324,7 +532,7 @@ public class Facebook {
      *            A list of permissions required for this application. If you do
      *            not require any permissions, pass an empty String array.
      */
-    private void startDialogAuth(Activity activity, String[] permissions) {
+    private void startDialogAuth(Activity activity, final String[] permissions) {
         Bundle params = new Bundle();
         if (permissions.length > 0) {
             params.putString("scope", TextUtils.join(",", permissions));
@@ -335,12 +543,13 @@ public class Facebook {
             public void onComplete(Bundle values) {
                 // ensure any cookies set by the dialog are saved
                 CookieSyncManager.getInstance().sync();
-                setAccessToken(values.getString(TOKEN));
-                setAccessExpiresIn(values.getString(EXPIRES));
+                updateSession(values.getString(TOKEN),
+                        values.getString(EXPIRES));
                 if (isSessionValid()) {
                     Util.logd("Facebook-authorize", "Login Success! access_token="
                             + getAccessToken() + " expires="
                             + getAccessExpires());
+                    updatePermissions(permissions);
                     mAuthDialogListener.onComplete(values);
                 } else {
                     mAuthDialogListener.onFacebookError(new FacebookError(
@@ -413,13 +622,14 @@ public class Facebook {
 
                     // No errors.
                 } else {
-                    setAccessToken(data.getStringExtra(TOKEN));
-                    setAccessExpiresIn(data.getStringExtra(EXPIRES));
+                    updateSession(data.getStringExtra(TOKEN),
+                            data.getStringExtra(EXPIRES));
                     if (isSessionValid()) {
                         Util.logd("Facebook-authorize",
                                 "Login Success! access_token="
                                         + getAccessToken() + " expires="
                                         + getAccessExpires());
+                        updatePermissions(mAuthPermissions);
                         mAuthDialogListener.onComplete(data.getExtras());
                     } else {
                         mAuthDialogListener.onFacebookError(new FacebookError(
@@ -458,6 +668,11 @@ public class Facebook {
      * method is asynchronous and the callback will be invoked in the original
      * calling thread (not in a background thread).
      *
+     * If a refresh is already in progress no new one is started: the
+     * listener receives the result of the refresh in progress, in the thread
+     * that started it. A refresh getting no reply within 30 seconds fails
+     * with an Error.
+     *
      * @param context
      *            The Android Context that will be used to bind to the Facebook
      *            RefreshToken Service
@@ -469,21 +684,32 @@ public class Facebook {
      * @return true if the binding to the RefreshToken Service was created
      */
     public boolean extendAccessToken(Context context, ServiceListener serviceListener) {
-        Intent intent = new Intent();
+        synchronized (mRefreshLock) {
+            if (mRefreshConnection != null) {
+                mRefreshConnection.addListener(serviceListener);
+                return true;
+            }
 
-        intent.setClassName("com.facebook.katana",
-                "com.facebook.katana.platform.TokenRefreshService");
+            Intent intent = newTokenRefreshIntent();
 
-        // Verify that the application whose package name is
-        // com.facebook.katana
-        // has the expected FB app signature.
-        if (!validateServiceIntent(context, intent)) {
-            return false;
-        }
+            // Verify that the application whose package name is
+            // com.facebook.katana
+            // has the expected FB app signature.
+            if (!validateServiceIntent(context, intent)) {
+                return false;
+            }
 
-        return context.bindService(intent,
-                new TokenRefreshServiceConnection(context, serviceListener),
-                Context.BIND_AUTO_CREATE);
+            TokenRefreshServiceConnection connection =
+                    new TokenRefreshServiceConnection(context);
+            connection.addListener(serviceListener);
+            if (!context.bindService(intent, connection,
+                    Context.BIND_AUTO_CREATE)) {
+                return false;
+            }
+            connection.startTimeout();
+            mRefreshConnection = connection;
+            return true;
+        }
     }
 
     /**
@@ -502,11 +728,47 @@ public class Facebook {
     /**
      * Check if the access token requires refreshing. 
      *
-     * @return true if the last time a new token was obtained was over 24 hours ago.
+     * @return true if the last time a new token was obtained was longer ago
+     *         than the refresh barrier (24 hours by default).
      */
     public boolean shouldExtendAccessToken() {
-        return isSessionValid() &&
-                (System.currentTimeMillis() - mLastAccessUpdate >= REFRESH_TOKEN_BARRIER);
+        SessionState session = mSession.get();
+        long now = System.currentTimeMillis();
+        return session.isValid(now) &&
+                (now - session.getLastAccessUpdate() >= mRefreshTokenBarrier);
+    }
+
+    /**
+     * Set how long (in milliseconds) a token is used before
+     * shouldExtendAccessToken() asks for a new one.
+     */
+    public void setRefreshTokenBarrier(long barrier) {
+        mRefreshTokenBarrier = barrier;
+    }
+
+    public long getRefreshTokenBarrier() {
+        return mRefreshTokenBarrier;
+    }
+
+    /**
+     * Record the permissions requested by a successful authorization,
+     * notifying session listeners if they changed.
+     */
+    private void updatePermissions(String[] permissions) {
+        String[] sorted = permissions.clone();
+        Arrays.sort(sorted);
+        if (!Arrays.equals(sorted, mPermissions)) {
+            mPermissions = sorted;
+            SessionEvents.onPermissionsChanged(sorted);
+        }
+    }
+
+    /**
+     * @return the permissions requested by the last successful
+     *         authorization; the user may not have granted all of them
+     */
+    public String[] getPermissions() {
+        return mPermissions.clone();
     }
 
     /**
@@ -515,9 +777,17 @@ public class Facebook {
      */
     private class TokenRefreshServiceConnection implements ServiceConnection {
 
-        final Messenger messageReceiver = new Messenger(new Handler() {
+        final Handler handler = new Handler() {
             @Override
             public void handleMessage(Message msg) {
+                // The refreshToken function should be called rarely,
+                // so there is no point in keeping the binding open.
+                List<ServiceListener> listeners = release();
+                if (listeners == null) {
+                    // the refresh timed out, the reply is too late
+                    return;
+                }
+
                 String token = msg.getData().getString(TOKEN);
                 long expiresAt = msg.getData().getLong(EXPIRES) * 1000L;
 
@@ -528,37 +798,113 @@ public class Facebook {
                 resultBundle.putLong(EXPIRES, expiresAt);
 
                 if (token != null) {
-                    setAccessToken(token);
-                    setAccessExpires(expiresAt);
-                    if (serviceListener != null) {
+                    setSession(token, expiresAt);
+                    SessionEvents.onTokenRefreshed(token, expiresAt);
+                }
+
+                if (token != null) {
+                    for (ServiceListener serviceListener : listeners) {
                         serviceListener.onComplete(resultBundle);
                     }
-                } else if (serviceListener != null) { // extract errors only if client wants them
+                } else if (!listeners.isEmpty()) { // extract errors only if clients want them
                     String error = msg.getData().getString("error");
                     if (msg.getData().containsKey("error_code")) {
                         int errorCode = msg.getData().getInt("error_code");
-                        serviceListener.onFacebookError(new FacebookError(error, null, errorCode));
+                        FacebookError e = new FacebookError(error, null, errorCode);
+                        for (ServiceListener serviceListener : listeners) {
+                            serviceListener.onFacebookError(e);
+                        }
                     } else {
-                        serviceListener.onError(new Error(error != null ? error
-                                : "Unknown service error"));
+                        notifyError(listeners, error != null ? error
+                                : "Unknown service error");
                     }
                 }
+            }
+        };
 
-                // The refreshToken function should be called rarely,
-                // so there is no point in keeping the binding open.
-                applicationsContext.unbindService(TokenRefreshServiceConnection.this);
+        final Messenger messageReceiver = new Messenger(handler);
+
+        final Runnable timeout = new Runnable() {
+            public void run() {
+                List<ServiceListener> listeners = release();
+                if (listeners != null) {
+                    notifyError(listeners, "Token refresh timed out");
+                }
             }
-        });
+        };
 
-        final ServiceListener serviceListener;
+        // guarded by mRefreshLock
+        final List<ServiceListener> serviceListeners =
+                new ArrayList<ServiceListener>(1);
+        boolean finished;
         final Context applicationsContext;
 
         Messenger messageSender = null;
 
-        public TokenRefreshServiceConnection(Context applicationsContext,
-                                             ServiceListener serviceListener) {
+        public TokenRefreshServiceConnection(Context applicationsContext) {
             this.applicationsContext = applicationsContext;
-            this.serviceListener = serviceListener;
+        }
+
+        /**
+         * Add a listener to notify of the result; called with mRefreshLock
+         * held.
+         */
+        void addListener(ServiceListener serviceListener) {
+            if (serviceListener != null) {
+                serviceListeners.add(serviceListener);
+            }
+        }
+
+        /**
+         * Abandon the refresh if it gets no reply in time, e.g. because the
+         * service never connects.
+         */
+        void startTimeout() {
+            handler.postDelayed(timeout, TOKEN_REFRESH_TIMEOUT);
+        }
+
+        /**
+         * Let the next extendAccessToken() start a new refresh.
+         *
+         * @return the listeners to notify of the result, or null if the
+         *         refresh already finished
+         */
+        List<ServiceListener> finish() {
+            synchronized (mRefreshLock) {
+                if (finished) {
+                    return null;
+                }
+                finished = true;
+                if (mRefreshConnection == this) {
+                    mRefreshConnection = null;
+                }
+                List<ServiceListener> listeners =
+                        new ArrayList<ServiceListener>(serviceListeners);
+                serviceListeners.clear();
+                return listeners;
+            }
+        }
+
+        /**
+         * Finish the refresh and unbind from the service.
+         *
+         * @return the listeners to notify of the result, or null if the
+         *         refresh already finished
+         */
+        List<ServiceListener> release() {
+            List<ServiceListener> listeners = finish();
+            if (listeners != null) {
+                handler.removeCallbacks(timeout);
+                applicationsContext.unbindService(TokenRefreshServiceConnection.this);
+            }
+            return listeners;
+        }
+
+        void notifyError(List<ServiceListener> listeners, String message) {
+            Error e = new Error(message);
+            for (ServiceListener serviceListener : listeners) {
+                serviceListener.onError(e);
+            }
         }
 
         @Override
@@ -569,15 +915,17 @@ public class Facebook {
 
         @Override
         public void onServiceDisconnected(ComponentName arg) {
-            serviceListener.onError(new Error("Service disconnected"));
             // We returned an error so there's no point in
             // keeping the binding open.
-            applicationsContext.unbindService(TokenRefreshServiceConnection.this);
+            List<ServiceListener> listeners = release();
+            if (listeners != null) {
+                notifyError(listeners, "Service disconnected");
+            }
         }
 
         private void refreshToken() {
             Bundle requestData = new Bundle();
-            requestData.putString(TOKEN, mAccessToken);
+            requestData.putString(TOKEN, getAccessToken());
 
             Message request = Message.obtain();
             request.setData(requestData);
@@ -586,7 +934,10 @@ public class Facebook {
             try {
                 messageSender.send(request);
             } catch (RemoteException e) {
-                serviceListener.onError(new Error("Service connection error"));
+                List<ServiceListener> listeners = release();
+                if (listeners != null) {
+                    notifyError(listeners, "Service connection error");
+                }
             }
         }
     };
@@ -611,11 +962,11 @@ public class Facebook {
     public String logout(Context context)
             throws MalformedURLException, IOException {
         Util.clearCookies(context);
-        Bundle b = new Bundle();
-        b.putString("method", "auth.expireSession");
-        String response = request(b);
-        setAccessToken(null);
-        setAccessExpires(0);
+        RequestParams params = new RequestParams.Builder(3)
+                .put("method", "auth.expireSession")
+                .build();
+        String response = request(null, params, "GET");
+        setSession(null, 0);
         return response;
     }
 
@@ -675,7 +1026,7 @@ public class Facebook {
      */
     public String request(String graphPath)
             throws MalformedURLException, IOException {
-        return request(graphPath, new Bundle(), "GET");
+        return request(graphPath, RequestParams.EMPTY, "GET");
     }
 
     /**
@@ -726,19 +1077,45 @@ public class Facebook {
      *            https://graph.facebook.com/search?q=facebook
      * @param httpMethod
      *            http verb, e.g. "GET", "POST", "DELETE"
+     * @throws SocketTimeoutException
+     *            if the request exceeds the timeouts configured for its
+     *            endpoint, see {@link #getTimeoutPolicy()}
+     * @throws CircuitBreakerOpenException
+     *            if the Graph or REST endpoint has been failing recently and
+     *            the request was not attempted, see
+     *            {@link #getGraphCircuitBreaker()}
      * @throws IOException
      * @throws MalformedURLException
      * @return JSON string representation of the response
      */
     public String request(String graphPath, Bundle params, String httpMethod)
             throws FileNotFoundException, MalformedURLException, IOException {
-        params.putString("format", "json");
-        if (isSessionValid()) {
-            params.putString(TOKEN, getAccessToken());
-        }
-        String url = (graphPath != null) ? GRAPH_BASE_URL + graphPath
-                : RESTSERVER_URL;
-        return Util.openUrl(url, httpMethod, params);
+        return request(graphPath, Util.toRequestParams(params), httpMethod);
+    }
+
+    /**
+     * Synchronously make a request to the Facebook Graph API, or to the old
+     * REST API if graphPath is null, with the given HTTP method and
+     * parameters. Byte array parameters are uploaded as files.
+     *
+     * The parameters are not modified: the format and access token are
+     * added to a copy.
+     *
+     * Note that this method blocks waiting for a network response, so do not
+     * call it in a UI thread.
+     *
+     * See request(String, Bundle, String) for the other parameters.
+     *
+     * @param params
+     *            Parameters of the request.
+     */
+    public String request(String graphPath, RequestParams params,
+                          String httpMethod)
+            throws FileNotFoundException, MalformedURLException, IOException {
+        SessionState session = mSession.get();
+        String token = session.isValid(System.currentTimeMillis())
+                ? session.getAccessToken() : null;
+        return mClient.execute(token, graphPath, params, httpMethod);
     }
 
     /**
@@ -802,7 +1179,10 @@ public class Facebook {
         if (isSessionValid()) {
             parameters.putString(TOKEN, getAccessToken());
         }
-        String url = endpoint + "?" + Util.encodeUrl(parameters);
+        StringBuilder sb = new StringBuilder(endpoint.length() + 256);
+        sb.append(endpoint).append('?');
+        Util.encodeUrl(parameters, sb);
+        String url = sb.toString();
         if (context.checkCallingOrSelfPermission(Manifest.permission.INTERNET)
                 != PackageManager.PERMISSION_GRANTED) {
             Util.showAlert(context, "Error",
@@ -817,9 +1197,17 @@ public class Facebook {
      * @return boolean - whether this object has an non-expired session token
      */
     public boolean isSessionValid() {
-        return (getAccessToken() != null) &&
-                ((getAccessExpires() == 0) ||
-                        (System.currentTimeMillis() < getAccessExpires()));
+        return mSession.get().isValid(System.currentTimeMillis());
+    }
+
+    /**
+     * Retrieve a consistent snapshot of the session: the token together
+     * with its own expiration time, even while another thread updates them.
+     *
+     * @return SessionState - current session, never null
+     */
+    public SessionState getSession() {
+        return mSession.get();
     }
 
     /**
@@ -829,7 +1217,7 @@ public class Facebook {
      * @return String - access token
      */
     public String getAccessToken() {
-        return mAccessToken;
+        return mSession.get().getAccessToken();
     }
 
     /**
@@ -839,7 +1227,7 @@ public class Facebook {
      * @return long - session expiration time
      */
     public long getAccessExpires() {
-        return mAccessExpires;
+        return mSession.get().getAccessExpires();
     }
 
     /**
@@ -848,8 +1236,12 @@ public class Facebook {
      * @param token - access token
      */
     public void setAccessToken(String token) {
-        mAccessToken = token;
-        mLastAccessUpdate = System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        SessionState current;
+        do {
+            current = mSession.get();
+        } while (!mSession.compareAndSet(current,
+                current.withAccessToken(token, now)));
     }
 
     /**
@@ -859,7 +1251,11 @@ public class Facebook {
      * @param time - timestamp in milliseconds
      */
     public void setAccessExpires(long time) {
-        mAccessExpires = time;
+        SessionState current;
+        do {
+            current = mSession.get();
+        } while (!mSession.compareAndSet(current,
+                current.withAccessExpires(time)));
     }
 
     /**
@@ -871,19 +1267,133 @@ public class Facebook {
      */
     public void setAccessExpiresIn(String expiresIn) {
         if (expiresIn != null) {
-            long expires = expiresIn.equals("0")
-                    ? 0
-                    : System.currentTimeMillis() + Long.parseLong(expiresIn) * 1000L;
-            setAccessExpires(expires);
+            setAccessExpires(expiresInToTime(expiresIn));
         }
     }
 
+    /**
+     * Set the access token and its expiration time at once, so that no
+     * thread sees the new token with the old expiration time.
+     *
+     * @param token - access token, or null to clear the session
+     * @param expires - expiration time in milliseconds since Unix epoch,
+     *            or 0 if the session doesn't expire
+     */
+    public void setSession(String token, long expires) {
+        mSession.set(new SessionState(token, expires,
+                System.currentTimeMillis()));
+    }
+
+    /**
+     * Notify session listeners that Facebook rejected the given token as
+     * invalid or expired, unless that was already reported, e.g. by
+     * another AsyncFacebookRunner of this object.
+     */
+    void onTokenExpired(String token) {
+        if (token == null) {
+            return;
+        }
+        String reported;
+        do {
+            reported = mExpiredToken.get();
+            if (token.equals(reported)) {
+                return;
+            }
+        } while (!mExpiredToken.compareAndSet(reported, token));
+        SessionEvents.onTokenExpired(token);
+    }
+
+    /**
+     * Set the session, unless one was set since this object was created,
+     * e.g. by an authorization completing while the saved session was being
+     * read.
+     *
+     * @return whether the session was set
+     */
+    boolean restoreSession(String token, long expires) {
+        return mSession.compareAndSet(SessionState.EMPTY, new SessionState(
+                token, expires, System.currentTimeMillis()));
+    }
+
+    /**
+     * Set the access token and, if expiresIn is not null, its expiration
+     * time at once.
+     */
+    private void updateSession(String token, String expiresIn) {
+        long now = System.currentTimeMillis();
+        SessionState current;
+        SessionState next;
+        do {
+            current = mSession.get();
+            next = current.withAccessToken(token, now);
+            if (expiresIn != null) {
+                next = next.withAccessExpires(expiresInToTime(expiresIn));
+            }
+        } while (!mSession.compareAndSet(current, next));
+    }
+
+    private static long expiresInToTime(String expiresIn) {
+        return expiresIn.equals("0")
+                ? 0
+                : System.currentTimeMillis() + Long.parseLong(expiresIn) * 1000L;
+    }
+
+    /**
+     * Retrieve the policy deciding the connect and read timeouts of each
+     * request made through this object. Endpoint specific overrides can be
+     * registered on it directly.
+     *
+     * @return TimeoutPolicy - the timeouts used by request()
+     */
+    public TimeoutPolicy getTimeoutPolicy() {
+        return mClient.getTimeoutPolicy();
+    }
+
+    /**
+     * Set the connect and read timeouts (in milliseconds) used by requests
+     * whose endpoint has no specific override.
+     */
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        mClient.getTimeoutPolicy().setDefaultTimeouts(connectTimeout, readTimeout);
+    }
+
+    /**
+     * Set the connect and read timeouts (in milliseconds) for a single
+     * endpoint, e.g. a longer read timeout for "photos" uploads.
+     *
+     * @see TimeoutPolicy#setTimeouts(String, int, int)
+     */
+    public void setTimeouts(String endpoint, int connectTimeout,
+                            int readTimeout) {
+        mClient.getTimeoutPolicy().setTimeouts(endpoint, connectTimeout, readTimeout);
+    }
+
+    /**
+     * Retrieve the circuit breaker guarding requests to the Graph API. When
+     * most recent requests failed with network or service errors, further
+     * requests fail fast with a CircuitBreakerOpenException until a probe
+     * request succeeds.
+     */
+    public CircuitBreaker getGraphCircuitBreaker() {
+        return mClient.getGraphCircuitBreaker();
+    }
+
+    /**
+     * Retrieve the circuit breaker guarding requests to the old REST API.
+     *
+     * @see #getGraphCircuitBreaker()
+     */
+    public CircuitBreaker getRestCircuitBreaker() {
+        return mClient.getRestCircuitBreaker();
+    }
+
     public String getAppId() {
         return mAppId;
     }
 
     public void setAppId(String appId) {
         mAppId = appId;
+        mClient.setAppId(appId);
     }
 
     /**
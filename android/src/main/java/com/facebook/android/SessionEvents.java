@@ -0,0 +1,525 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Registry of listeners notified of authentication and logout events, and
+ * of the session lifecycle events of SessionListener: token refreshed or
+ * expired, permissions changed and request completed.
+ *
+ * Listeners may be added and removed from any thread, including from a
+ * callback. Each dispatch iterates over a snapshot of the listeners taken
+ * when it starts, without copying or locking.
+ *
+ * Each listener is called according to the dispatch mode it was added
+ * with: synchronously by the thread raising the event (the default), on
+ * the main thread, or on a background executor, so that slow listeners
+ * do not hold up the others.
+ *
+ * Listeners added with addWeakAuthListener() or addWeakLogoutListener()
+ * are only weakly referenced, e.g. an Activity that may not remove itself:
+ * once garbage collected they are dropped at the next dispatch.
+ *
+ * Dispatching an event to synchronous listeners allocates at most one
+ * object holding its arguments, none for events without arguments.
+ */
+public class SessionEvents {
+
+    /** Call the listener in the thread raising the event. */
+    public static final int DISPATCH_SYNC = 0;
+    /** Post the call to the main thread. */
+    public static final int DISPATCH_MAIN_THREAD = 1;
+    /** Run the call on the background executor. */
+    public static final int DISPATCH_BACKGROUND = 2;
+
+    private static final CopyOnWriteArrayList<Registration<AuthListener>> mAuthListeners =
+            new CopyOnWriteArrayList<Registration<AuthListener>>();
+    private static final CopyOnWriteArrayList<Registration<LogoutListener>> mLogoutListeners =
+            new CopyOnWriteArrayList<Registration<LogoutListener>>();
+    private static final CopyOnWriteArrayList<Registration<SessionListener>> mSessionListeners =
+            new CopyOnWriteArrayList<Registration<SessionListener>>();
+
+    private static volatile Handler sMainHandler;
+    private static volatile Executor sBackgroundExecutor;
+
+    /**
+     * Associate the given listener with this Facebook object. The listener's
+     * callback interface will be invoked when authentication events occur.
+     *
+     * @param listener The callback object for notifying the application when auth
+     *                 events happen.
+     */
+    public static void addAuthListener(AuthListener listener) {
+        addAuthListener(listener, DISPATCH_SYNC);
+    }
+
+    /**
+     * Associate the given listener with this Facebook object, to be called
+     * according to the given dispatch mode.
+     *
+     * @param listener The callback object for notifying the application when auth
+     *                 events happen.
+     * @param dispatchMode DISPATCH_SYNC, DISPATCH_MAIN_THREAD or
+     *                 DISPATCH_BACKGROUND
+     */
+    public static void addAuthListener(AuthListener listener, int dispatchMode) {
+        mAuthListeners.add(new Registration<AuthListener>(listener, dispatchMode, false));
+    }
+
+    /**
+     * Associate the given listener with this Facebook object without
+     * keeping it from being garbage collected.
+     *
+     * @param listener The callback object for notifying the application when auth
+     *                 events happen.
+     * @param dispatchMode DISPATCH_SYNC, DISPATCH_MAIN_THREAD or
+     *                 DISPATCH_BACKGROUND
+     */
+    public static void addWeakAuthListener(AuthListener listener, int dispatchMode) {
+        mAuthListeners.add(new Registration<AuthListener>(listener, dispatchMode, true));
+    }
+
+    public static void addWeakAuthListener(AuthListener listener) {
+        addWeakAuthListener(listener, DISPATCH_SYNC);
+    }
+
+    /**
+     * Remove the given listener from the list of those that will be notified
+     * when authentication events occur.
+     *
+     * @param listener The callback object for notifying the application when auth
+     *                 events happen.
+     */
+    public static void removeAuthListener(AuthListener listener) {
+        remove(mAuthListeners, listener);
+    }
+
+    /**
+     * Associate the given listener with this Facebook object. The listener's
+     * callback interface will be invoked when logout occurs.
+     *
+     * @param listener The callback object for notifying the application when log out
+     *                 starts and finishes.
+     */
+    public static void addLogoutListener(LogoutListener listener) {
+        addLogoutListener(listener, DISPATCH_SYNC);
+    }
+
+    /**
+     * Associate the given listener with this Facebook object, to be called
+     * according to the given dispatch mode.
+     *
+     * @param listener The callback object for notifying the application when log out
+     *                 starts and finishes.
+     * @param dispatchMode DISPATCH_SYNC, DISPATCH_MAIN_THREAD or
+     *                 DISPATCH_BACKGROUND
+     */
+    public static void addLogoutListener(LogoutListener listener, int dispatchMode) {
+        mLogoutListeners.add(new Registration<LogoutListener>(listener, dispatchMode, false));
+    }
+
+    /**
+     * Associate the given listener with this Facebook object without
+     * keeping it from being garbage collected.
+     *
+     * @param listener The callback object for notifying the application when log out
+     *                 starts and finishes.
+     * @param dispatchMode DISPATCH_SYNC, DISPATCH_MAIN_THREAD or
+     *                 DISPATCH_BACKGROUND
+     */
+    public static void addWeakLogoutListener(LogoutListener listener, int dispatchMode) {
+        mLogoutListeners.add(new Registration<LogoutListener>(listener, dispatchMode, true));
+    }
+
+    public static void addWeakLogoutListener(LogoutListener listener) {
+        addWeakLogoutListener(listener, DISPATCH_SYNC);
+    }
+
+    /**
+     * Remove the given listener from the list of those that will be notified
+     * when logout occurs.
+     *
+     * @param listener The callback object for notifying the application when log out
+     *                 starts and finishes.
+     */
+    public static void removeLogoutListener(LogoutListener listener) {
+        remove(mLogoutListeners, listener);
+    }
+
+    /**
+     * Associate the given listener with this Facebook object. The listener's
+     * callback interface will be invoked when session lifecycle events occur.
+     *
+     * @param listener The callback object for notifying the application of
+     *                 session events; see BaseSessionListener.
+     * @param dispatchMode DISPATCH_SYNC, DISPATCH_MAIN_THREAD or
+     *                 DISPATCH_BACKGROUND
+     */
+    public static void addSessionListener(SessionListener listener, int dispatchMode) {
+        mSessionListeners.add(new Registration<SessionListener>(listener, dispatchMode, false));
+    }
+
+    public static void addSessionListener(SessionListener listener) {
+        addSessionListener(listener, DISPATCH_SYNC);
+    }
+
+    /**
+     * Associate the given listener with this Facebook object without
+     * keeping it from being garbage collected.
+     *
+     * @see #addSessionListener(SessionListener, int)
+     */
+    public static void addWeakSessionListener(SessionListener listener, int dispatchMode) {
+        mSessionListeners.add(new Registration<SessionListener>(listener, dispatchMode, true));
+    }
+
+    public static void addWeakSessionListener(SessionListener listener) {
+        addWeakSessionListener(listener, DISPATCH_SYNC);
+    }
+
+    /**
+     * Remove the given listener from the list of those that will be notified
+     * of session lifecycle events.
+     */
+    public static void removeSessionListener(SessionListener listener) {
+        remove(mSessionListeners, listener);
+    }
+
+    /**
+     * @return whether any session listener is registered, e.g. to skip
+     *         collecting data for an event
+     */
+    public static boolean hasSessionListeners() {
+        return !mSessionListeners.isEmpty();
+    }
+
+    /**
+     * Set the executor running the listeners added with DISPATCH_BACKGROUND.
+     * By default they run one at a time on a dedicated thread.
+     */
+    public static void setBackgroundExecutor(Executor executor) {
+        sBackgroundExecutor = executor;
+    }
+
+    public static void onLoginSuccess() {
+        dispatch(mAuthListeners, LOGIN_SUCCESS);
+    }
+
+    public static void onLoginError(final String error) {
+        dispatch(mAuthListeners, new Event<AuthListener>() {
+            void invoke(AuthListener listener) {
+                listener.onAuthFail(error);
+            }
+        });
+    }
+
+    public static void onLogoutBegin() {
+        dispatch(mLogoutListeners, LOGOUT_BEGIN);
+    }
+
+    public static void onLogoutFinish() {
+        dispatch(mLogoutListeners, LOGOUT_FINISH);
+    }
+
+    public static void onTokenRefreshed(final String accessToken,
+                                        final long accessExpires) {
+        dispatch(mSessionListeners, new Event<SessionListener>() {
+            void invoke(SessionListener listener) {
+                listener.onTokenRefreshed(accessToken, accessExpires);
+            }
+        });
+    }
+
+    public static void onTokenExpired(final String accessToken) {
+        dispatch(mSessionListeners, new Event<SessionListener>() {
+            void invoke(SessionListener listener) {
+                listener.onTokenExpired(accessToken);
+            }
+        });
+    }
+
+    public static void onPermissionsChanged(final String[] permissions) {
+        dispatch(mSessionListeners, new Event<SessionListener>() {
+            void invoke(SessionListener listener) {
+                // each listener gets its own copy it may modify
+                listener.onPermissionsChanged(permissions.clone());
+            }
+        });
+    }
+
+    public static void onRequestCompleted(final String graphPath,
+                                          final String httpMethod,
+                                          final boolean success,
+                                          final int attempts,
+                                          final long waitMillis,
+                                          final long durationMillis) {
+        // called for every request: allocate nothing for the listeners
+        // called synchronously, and nothing at all without listeners
+        if (mSessionListeners.isEmpty()) {
+            return;
+        }
+        for (Registration<SessionListener> registration : mSessionListeners) {
+            final SessionListener listener = registration.get();
+            if (listener == null) {
+                mSessionListeners.remove(registration);
+            } else if (registration.mDispatchMode == DISPATCH_SYNC) {
+                listener.onRequestCompleted(graphPath, httpMethod, success,
+                        attempts, waitMillis, durationMillis);
+            } else {
+                dispatch(registration.mDispatchMode, new Runnable() {
+                    public void run() {
+                        listener.onRequestCompleted(graphPath, httpMethod,
+                                success, attempts, waitMillis, durationMillis);
+                    }
+                });
+            }
+        }
+    }
+
+    private static final Event<AuthListener> LOGIN_SUCCESS =
+            new Event<AuthListener>() {
+        void invoke(AuthListener listener) {
+            listener.onAuthSucceed();
+        }
+    };
+
+    private static final Event<LogoutListener> LOGOUT_BEGIN =
+            new Event<LogoutListener>() {
+        void invoke(LogoutListener listener) {
+            listener.onLogoutBegin();
+        }
+    };
+
+    private static final Event<LogoutListener> LOGOUT_FINISH =
+            new Event<LogoutListener>() {
+        void invoke(LogoutListener listener) {
+            listener.onLogoutFinish();
+        }
+    };
+
+    public static void removeAllAuthListeners() {
+        mAuthListeners.clear();
+    }
+
+    private static <L> void remove(
+            CopyOnWriteArrayList<Registration<L>> registrations, L listener) {
+        boolean removed = false;
+        for (Registration<L> registration : registrations) {
+            L registered = registration.get();
+            if (registered == null) {
+                registrations.remove(registration);
+            } else if (!removed && registered.equals(listener)) {
+                registrations.remove(registration);
+                removed = true;
+            }
+        }
+    }
+
+    /**
+     * Call every listener of the list with the event, dropping the ones
+     * that were garbage collected.
+     */
+    private static <L> void dispatch(
+            CopyOnWriteArrayList<Registration<L>> registrations,
+            final Event<L> event) {
+        for (Registration<L> registration : registrations) {
+            final L listener = registration.get();
+            if (listener == null) {
+                registrations.remove(registration);
+            } else if (registration.mDispatchMode == DISPATCH_SYNC) {
+                event.invoke(listener);
+            } else {
+                dispatch(registration.mDispatchMode, new Runnable() {
+                    public void run() {
+                        event.invoke(listener);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void dispatch(int dispatchMode, Runnable call) {
+        if (dispatchMode == DISPATCH_MAIN_THREAD) {
+            Handler handler = sMainHandler;
+            if (handler == null) {
+                handler = new Handler(Looper.getMainLooper());
+                sMainHandler = handler;
+            }
+            handler.post(call);
+        } else {
+            getBackgroundExecutor().execute(call);
+        }
+    }
+
+    private static Executor getBackgroundExecutor() {
+        Executor executor = sBackgroundExecutor;
+        if (executor == null) {
+            synchronized (SessionEvents.class) {
+                executor = sBackgroundExecutor;
+                if (executor == null) {
+                    ExecutorService service = Executors.newSingleThreadExecutor(
+                            new ThreadFactory() {
+                                public Thread newThread(Runnable r) {
+                                    Thread thread = new Thread(r, "Facebook-SessionEvents");
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            });
+                    sBackgroundExecutor = executor = service;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * An event and its arguments, passed to each listener of a list.
+     */
+    private static abstract class Event<L> {
+        abstract void invoke(L listener);
+    }
+
+    /**
+     * A listener, strongly or weakly referenced, and the way it is called.
+     */
+    private static final class Registration<L> {
+        private final L mListener;
+        private final WeakReference<L> mWeakListener;
+        final int mDispatchMode;
+
+        Registration(L listener, int dispatchMode, boolean weak) {
+            mListener = weak ? null : listener;
+            mWeakListener = weak ? new WeakReference<L>(listener) : null;
+            mDispatchMode = dispatchMode;
+        }
+
+        /**
+         * @return the listener, or null if it was garbage collected
+         */
+        L get() {
+            return (mWeakListener != null) ? mWeakListener.get() : mListener;
+        }
+    }
+
+    /**
+     * Callback interface for authorization events.
+     */
+    public static interface AuthListener {
+
+        /**
+         * Called when a auth flow completes successfully and a valid OAuth
+         * Token was received.
+         * <p/>
+         * Executed by the thread that initiated the authentication, unless the
+         * listener was added with another dispatch mode.
+         * <p/>
+         * API requests can now be made.
+         */
+        public void onAuthSucceed();
+
+        /**
+         * Called when a login completes unsuccessfully with an error.
+         * <p/>
+         * Executed by the thread that initiated the authentication, unless the
+         * listener was added with another dispatch mode.
+         */
+        public void onAuthFail(String error);
+    }
+
+    /**
+     * Callback interface for logout events.
+     */
+    public static interface LogoutListener {
+        /**
+         * Called when logout begins, before session is invalidated.
+         * Last chance to make an API call.
+         * <p/>
+         * Executed by the thread that initiated the logout, unless the
+         * listener was added with another dispatch mode.
+         */
+        public void onLogoutBegin();
+
+        /**
+         * Called when the session information has been cleared.
+         * UI should be updated to reflect logged-out state.
+         * <p/>
+         * Executed by the thread that initiated the logout, unless the
+         * listener was added with another dispatch mode.
+         */
+        public void onLogoutFinish();
+    }
+
+    /**
+     * Callback interface for session lifecycle events. Extend
+     * BaseSessionListener to implement only some of them.
+     */
+    public static interface SessionListener {
+
+        /**
+         * Called when the token was refreshed through the Facebook app.
+         *
+         * @param accessToken the new token
+         * @param accessExpires its expiration time in milliseconds since
+         *            Unix epoch, or 0 if it doesn't expire
+         */
+        public void onTokenRefreshed(String accessToken, long accessExpires);
+
+        /**
+         * Called when Facebook reports that the token used by a request is
+         * invalid or expired. Called once per token and Facebook object, however
+         * many runners of that object use the token.
+         */
+        public void onTokenExpired(String accessToken);
+
+        /**
+         * Called when an authorization completes that requested permissions
+         * other than those of the previous one.
+         *
+         * @param permissions the permissions requested by the authorization,
+         *            sorted; Facebook does not report which of them the user
+         *            granted
+         */
+        public void onPermissionsChanged(String[] permissions);
+
+        /**
+         * Called when a request made through AsyncFacebookRunner completes
+         * or fails.
+         *
+         * @param graphPath the Graph path, or null for the old REST API
+         * @param httpMethod the http verb of the request
+         * @param success whether a response without error was received
+         * @param attempts the number of times the request was made
+         * @param waitMillis time spent queued before the first attempt
+         * @param durationMillis time from the first attempt to completion,
+         *            including retries and token refreshes
+         */
+        public void onRequestCompleted(String graphPath, String httpMethod,
+                                       boolean success, int attempts,
+                                       long waitMillis, long durationMillis);
+    }
+
+}
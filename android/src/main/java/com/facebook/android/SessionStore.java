@@ -0,0 +1,424 @@
+package com.facebook.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persists the session of a Facebook object across application restarts.
+ *
+ * Besides the default session, sessions of several accounts can be kept
+ * side by side, keyed by user id, e.g. to switch between linked accounts.
+ *
+ * Saved sessions are indexed in memory, and writes to disk happen in a
+ * background thread: save(), restore() and clear() never block on disk,
+ * except for the first read. Writes made in quick succession are batched,
+ * only the latest session of each account being written. Call flush() to
+ * wait for pending writes, e.g. before the process may be killed.
+ *
+ * With setEncryptionEnabled(true), access tokens are written encrypted
+ * with a SessionCipher. Its key is given to setEncryptionKey(), or else
+ * created on first use, kept in private preferences and loaded once per
+ * process; saved tokens are decrypted lazily, when their session is first
+ * restored.
+ *
+ * Note that a key created this way is stored unencrypted next to the
+ * tokens, so it only protects them where the preferences file is copied
+ * out without the key's file, e.g. by a partial backup. Against anyone able
+ * to read the application's private files, supply a key kept elsewhere,
+ * e.g. derived from a user secret.
+ */
+public class SessionStore {
+    private static final String TOKEN = "access_token";
+    private static final String EXPIRES = "expires_in";
+    private static final String KEY = "facebook-session";
+    private static final String ACCOUNTS_KEY = "facebook-sessions";
+    private static final String CIPHER_KEY = "facebook-session-key";
+    private static final String ENCRYPTED_PREFIX = "enc:";
+
+    private static volatile boolean sEncrypt;
+    // guarded by SessionStore.class
+    private static SessionCipher sCipher;
+    private static byte[] sKey;
+
+    // the default session last saved or restored, or null if not loaded yet;
+    // written under sLock
+    private static volatile SessionState sCache;
+
+    // the sessions of all accounts, by user id; loaded once
+    private static final ConcurrentHashMap<String, SessionState> sAccounts =
+            new ConcurrentHashMap<String, SessionState>();
+    private static volatile boolean sAccountsLoaded;
+
+    // the sessions waiting to be written, by user id or null for the
+    // default session; SessionState.EMPTY removes a session. Guarded by
+    // sLock
+    private static final Object sLock = new Object();
+    private static final Map<String, SessionState> sPending =
+            new HashMap<String, SessionState>();
+    private static Context sPendingContext;
+    private static boolean sWriterRunning;
+
+    // serializes disk writes, so that they land in order
+    private static final Object sDiskLock = new Object();
+
+    private SessionStore(){}
+
+    /**
+     * Save the session of the given object. The write happens in the
+     * background.
+     *
+     * @return true
+     */
+    public static boolean save(Context context, Facebook session) {
+        enqueue(context, null, session.getSession());
+        return true;
+    }
+
+    /**
+     * Set the session of the given object to the one last saved. Only the
+     * first call reads from disk.
+     *
+     * The session is only restored if the object has none yet, e.g. it is
+     * left alone if the application authorized or logged out while the
+     * session was read; likewise a session saved or cleared meanwhile wins
+     * over the one read.
+     *
+     * @return whether the session of the object is valid
+     */
+    public static boolean restore(Context context, Facebook session) {
+        SessionState state = sCache;
+        if (state == null) {
+            SharedPreferences savedSession = context.getSharedPreferences(KEY, Context.MODE_PRIVATE);
+            SessionState saved = new SessionState(
+                    decryptToken(context, savedSession.getString(TOKEN, null)),
+                    savedSession.getLong(EXPIRES, 0), 0);
+            synchronized (sLock) {
+                if (sCache == null) {
+                    sCache = saved;
+                }
+                state = sCache;
+            }
+        }
+        session.restoreSession(state.getAccessToken(),
+                state.getAccessExpires());
+        return session.isSessionValid();
+    }
+
+    /**
+     * Forget the saved session. The write happens in the background.
+     */
+    public static void clear(Context context) {
+        enqueue(context, null, SessionState.EMPTY);
+    }
+
+    /**
+     * Save the session of the given object as the one of an account. The
+     * write happens in the background.
+     *
+     * @param userId
+     *            Facebook user id of the account
+     * @return true
+     */
+    public static boolean save(Context context, String userId,
+                               Facebook session) {
+        loadAccounts(context);
+        SessionState state = session.getSession();
+        sAccounts.put(userId, state);
+        enqueue(context, userId, state);
+        return true;
+    }
+
+    /**
+     * Set the session of the given object to the one last saved for an
+     * account, without disk access once the accounts are loaded. The
+     * session is not modified if none was saved for the account.
+     *
+     * @param userId
+     *            Facebook user id of the account
+     * @return whether the restored session is valid
+     */
+    public static boolean restore(Context context, String userId,
+                                  Facebook session) {
+        loadAccounts(context);
+        SessionState state = sAccounts.get(userId);
+        if (state == null) {
+            return false;
+        }
+        String token = state.getAccessToken();
+        if (token != null && token.startsWith(ENCRYPTED_PREFIX)) {
+            SessionState decrypted = new SessionState(
+                    decryptToken(context, token), state.getAccessExpires(), 0);
+            // unless saved again meanwhile
+            sAccounts.replace(userId, state, decrypted);
+            state = decrypted;
+        }
+        session.setSession(state.getAccessToken(), state.getAccessExpires());
+        return session.isSessionValid();
+    }
+
+    /**
+     * Forget the saved session of an account. The write happens in the
+     * background.
+     */
+    public static void clear(Context context, String userId) {
+        loadAccounts(context);
+        sAccounts.remove(userId);
+        enqueue(context, userId, SessionState.EMPTY);
+    }
+
+    /**
+     * @return the user ids of the accounts whose session is saved
+     */
+    public static Set<String> getUserIds(Context context) {
+        loadAccounts(context);
+        return Collections.unmodifiableSet(
+                new HashSet<String>(sAccounts.keySet()));
+    }
+
+    /**
+     * Write access tokens encrypted from now on. Tokens already saved in
+     * plain text are still read, and encrypted the next time they are
+     * saved.
+     *
+     * Unless setEncryptionKey() is called, the key is generated and stored
+     * unencrypted in the application's private preferences: it does not
+     * protect tokens from anyone who can read those.
+     */
+    public static void setEncryptionEnabled(boolean enabled) {
+        sEncrypt = enabled;
+    }
+
+    /**
+     * Set the master key tokens are encrypted with, instead of the one
+     * generated and stored in private preferences. The application is
+     * responsible for keeping it secret and for supplying the same key in
+     * every process: tokens encrypted with another key cannot be decrypted
+     * and their sessions are restored without a token.
+     *
+     * @param key
+     *            at least 16 bytes of secret key material, e.g. from
+     *            SessionCipher.generateKey(), or null to use the stored key
+     */
+    public static synchronized void setEncryptionKey(byte[] key) {
+        if (key != null && key.length < 16) {
+            throw new IllegalArgumentException(
+                    "Encryption key must be at least 16 bytes long");
+        }
+        sKey = (key != null) ? key.clone() : null;
+        sCipher = null;
+    }
+
+    /**
+     * Write the pending sessions, if any, blocking until they are on disk.
+     *
+     * @return false if a write failed, or if a token could not be
+     *         encrypted, in which case the session previously saved for its
+     *         account is kept
+     */
+    public static boolean flush() {
+        return writePending();
+    }
+
+    private static void loadAccounts(Context context) {
+        if (sAccountsLoaded) {
+            return;
+        }
+        synchronized (sLock) {
+            if (sAccountsLoaded) {
+                return;
+            }
+            Map<String, ?> saved = context.getSharedPreferences(ACCOUNTS_KEY,
+                    Context.MODE_PRIVATE).getAll();
+            String suffix = "." + TOKEN;
+            for (Map.Entry<String, ?> entry : saved.entrySet()) {
+                String key = entry.getKey();
+                if (!key.endsWith(suffix)) {
+                    continue;
+                }
+                String userId = key.substring(0, key.length() - suffix.length());
+                Object expires = saved.get(userId + "." + EXPIRES);
+                sAccounts.put(userId, new SessionState(
+                        (String) entry.getValue(),
+                        (expires instanceof Long) ? (Long) expires : 0, 0));
+            }
+            sAccountsLoaded = true;
+        }
+    }
+
+    /**
+     * @return the cipher of the process, using the key set by the
+     *         application or else loading or creating the stored key first
+     */
+    private static synchronized SessionCipher getCipher(Context context)
+            throws GeneralSecurityException {
+        if (sCipher == null && sKey != null) {
+            sCipher = new SessionCipher(sKey);
+        } else if (sCipher == null) {
+            SharedPreferences prefs = context.getSharedPreferences(CIPHER_KEY,
+                    Context.MODE_PRIVATE);
+            String encoded = prefs.getString(CIPHER_KEY, null);
+            byte[] key;
+            if (encoded != null) {
+                key = Base64.decode(encoded, Base64.NO_WRAP);
+            } else {
+                key = SessionCipher.generateKey();
+                prefs.edit()
+                        .putString(CIPHER_KEY,
+                                Base64.encodeToString(key, Base64.NO_WRAP))
+                        .commit();
+            }
+            sCipher = new SessionCipher(key);
+        }
+        return sCipher;
+    }
+
+    /**
+     * @return the token to write, encrypted if encryption is enabled
+     * @throws GeneralSecurityException
+     *            if the token could not be encrypted; it must then not be
+     *            written at all
+     */
+    private static String encryptToken(Context context, String token)
+            throws GeneralSecurityException {
+        if (token == null || !sEncrypt) {
+            return token;
+        }
+        return ENCRYPTED_PREFIX + getCipher(context).encrypt(token);
+    }
+
+    /**
+     * @return the plain text token, or null if it cannot be decrypted, e.g.
+     *         because the key was lost
+     */
+    private static String decryptToken(Context context, String token) {
+        if (token == null || !token.startsWith(ENCRYPTED_PREFIX)) {
+            return token;
+        }
+        try {
+            return getCipher(context).decrypt(
+                    token.substring(ENCRYPTED_PREFIX.length()));
+        } catch (GeneralSecurityException e) {
+            Util.logd("Facebook-SessionStore", "Decryption failed: " + e);
+            return null;
+        } catch (IllegalArgumentException e) {
+            Util.logd("Facebook-SessionStore", "Invalid key: " + e);
+            return null;
+        }
+    }
+
+    private static void enqueue(Context context, String userId,
+                                SessionState state) {
+        synchronized (sLock) {
+            if (userId == null) {
+                sCache = state;
+            }
+            sPending.put(userId, state);
+            sPendingContext = context.getApplicationContext();
+            if (sWriterRunning) {
+                // the running writer picks up the latest sessions
+                return;
+            }
+            sWriterRunning = true;
+        }
+        Thread writer = new Thread("Facebook-SessionStore") {
+            @Override
+            public void run() {
+                try {
+                    do {
+                        writePending();
+                    } while (hasPending());
+                } finally {
+                    synchronized (sLock) {
+                        sWriterRunning = false;
+                    }
+                    // a session enqueued right before the writer stopped
+                    if (hasPending()) {
+                        flush();
+                    }
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static boolean hasPending() {
+        synchronized (sLock) {
+            return !sPending.isEmpty();
+        }
+    }
+
+    private static boolean writePending() {
+        synchronized (sDiskLock) {
+            Map<String, SessionState> pending;
+            Context context;
+            synchronized (sLock) {
+                if (sPending.isEmpty()) {
+                    return true;
+                }
+                pending = new HashMap<String, SessionState>(sPending);
+                context = sPendingContext;
+                sPending.clear();
+                sPendingContext = null;
+            }
+            // apply() is not available before API level 9
+            boolean success = true;
+            if (pending.containsKey(null)) {
+                SessionState state = pending.remove(null);
+                SharedPreferences.Editor editor =
+                    context.getSharedPreferences(KEY, Context.MODE_PRIVATE).edit();
+                if (state == SessionState.EMPTY) {
+                    editor.clear();
+                    success = editor.commit();
+                } else {
+                    try {
+                        editor.putString(TOKEN,
+                                encryptToken(context, state.getAccessToken()));
+                        editor.putLong(EXPIRES, state.getAccessExpires());
+                        success = editor.commit();
+                    } catch (GeneralSecurityException e) {
+                        // keep the session previously written
+                        Util.logd("Facebook-SessionStore",
+                                "Encryption failed: " + e);
+                        success = false;
+                    }
+                }
+            }
+            if (!pending.isEmpty()) {
+                SharedPreferences.Editor editor = context.getSharedPreferences(
+                        ACCOUNTS_KEY, Context.MODE_PRIVATE).edit();
+                for (Map.Entry<String, SessionState> entry : pending.entrySet()) {
+                    String userId = entry.getKey();
+                    SessionState state = entry.getValue();
+                    if (state == SessionState.EMPTY) {
+                        editor.remove(userId + "." + TOKEN);
+                        editor.remove(userId + "." + EXPIRES);
+                    } else {
+                        try {
+                            String token = encryptToken(context,
+                                    state.getAccessToken());
+                            editor.putString(userId + "." + TOKEN, token);
+                            editor.putLong(userId + "." + EXPIRES,
+                                    state.getAccessExpires());
+                        } catch (GeneralSecurityException e) {
+                            // keep the session previously written
+                            Util.logd("Facebook-SessionStore",
+                                    "Encryption failed: " + e);
+                            success = false;
+                        }
+                    }
+                }
+                success &= editor.commit();
+            }
+            return success;
+        }
+    }
+}
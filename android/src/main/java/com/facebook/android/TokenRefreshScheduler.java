@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.Random;
+
+/**
+ * Refreshes the access token of a Facebook object in the background, ahead
+ * of its expiration, so that requests never find it expired.
+ *
+ * A refresh is scheduled at the earliest of the refresh barrier after the
+ * token was last set (see Facebook.setRefreshTokenBarrier()) and the refresh
+ * lead before the token expires, moved earlier by a random jitter so that
+ * many devices do not refresh at the same instant. Failed refreshes are
+ * retried with exponential backoff.
+ *
+ * Refreshes run on a dedicated thread, through the Facebook app's token
+ * refresh service; see Facebook.extendAccessToken(). When no session is
+ * valid nothing is scheduled: call reschedule() after logging in.
+ *
+ * Example:
+ * <code>
+ *  TokenRefreshScheduler refresher = new TokenRefreshScheduler(facebook,
+ *          context, null);
+ *  refresher.start();
+ *  ...
+ *  refresher.stop();
+ * </code>
+ */
+public class TokenRefreshScheduler {
+
+    public static final long DEFAULT_REFRESH_LEAD = 60L * 60L * 1000L;
+    public static final long DEFAULT_MAX_JITTER = 15L * 60L * 1000L;
+
+    private static final long MIN_RETRY_DELAY = 60L * 1000L;
+    private static final long MAX_RETRY_DELAY = 60L * 60L * 1000L;
+
+    private final Facebook mFacebook;
+    private final Context mContext;
+    private final Facebook.ServiceListener mListener;
+    private final Random mRandom = new Random();
+
+    private volatile long mRefreshLead = DEFAULT_REFRESH_LEAD;
+    private volatile long mMaxJitter = DEFAULT_MAX_JITTER;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    // accessed by the refresh thread; volatile because a refresh started
+    // before stop() completes on the thread of the previous start()
+    private volatile int mFailures;
+    private volatile boolean mRefreshing;
+    // refreshes that returned a token expiring within the refresh lead, and
+    // the time before which no refresh is made because of them
+    private volatile int mUnproductiveRefreshes;
+    private volatile long mNotBefore;
+    // looper to quit once the refresh in progress completes
+    private volatile Looper mQuitLooper;
+    // handler of the thread that started the refresh in progress, which
+    // its result is posted to
+    private volatile Handler mRefreshHandler;
+
+    /**
+     * @param facebook
+     *            The object whose token is refreshed.
+     * @param context
+     *            Used to bind to the token refresh service; its application
+     *            context is retained.
+     * @param listener
+     *            Notified on the refresh thread of each refresh result, or
+     *            null.
+     */
+    public TokenRefreshScheduler(Facebook facebook, Context context,
+                                 Facebook.ServiceListener listener) {
+        mFacebook = facebook;
+        mContext = context.getApplicationContext();
+        mListener = listener;
+    }
+
+    /**
+     * Set how long (in milliseconds) before the token expires it is
+     * refreshed.
+     */
+    public void setRefreshLead(long refreshLead) {
+        mRefreshLead = refreshLead;
+    }
+
+    public long getRefreshLead() {
+        return mRefreshLead;
+    }
+
+    /**
+     * Set the maximum random amount of time (in milliseconds) a refresh is
+     * moved earlier, or 0 for none.
+     */
+    public void setMaxJitter(long maxJitter) {
+        mMaxJitter = maxJitter;
+    }
+
+    public long getMaxJitter() {
+        return mMaxJitter;
+    }
+
+    /**
+     * Start the refresh thread and schedule the next refresh.
+     */
+    public synchronized void start() {
+        if (mThread == null) {
+            mThread = new HandlerThread("Facebook-TokenRefresh",
+                    android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+        }
+        reschedule();
+    }
+
+    /**
+     * Cancel the next refresh and stop the refresh thread. A refresh
+     * already in progress still completes, as its result is delivered on
+     * the refresh thread: the thread stops afterwards.
+     */
+    public synchronized void stop() {
+        if (mThread != null) {
+            mHandler.removeCallbacks(mCheck);
+            final Looper looper = mThread.getLooper();
+            mHandler.post(new Runnable() {
+                public void run() {
+                    if (mRefreshing) {
+                        mQuitLooper = looper;
+                    } else {
+                        looper.quit();
+                    }
+                }
+            });
+            mThread = null;
+            mHandler = null;
+        }
+    }
+
+    /**
+     * Compute the next refresh again, e.g. after logging in or setting a
+     * new token. Has no effect if the scheduler is not started.
+     */
+    public synchronized void reschedule() {
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mCheck);
+            mHandler.post(mCheck);
+        }
+    }
+
+    private synchronized void postCheck(long delay) {
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mCheck);
+            mHandler.postDelayed(mCheck, delay);
+        }
+    }
+
+    private final Runnable mCheck = new Runnable() {
+        public void run() {
+            if (mRefreshing) {
+                // the result of the refresh in progress reschedules
+                return;
+            }
+            SessionState session = mFacebook.getSession();
+            long now = System.currentTimeMillis();
+            if (!session.isValid(now)) {
+                return;
+            }
+            long delay = getRefreshTime(session) - now;
+            if (delay > 0) {
+                // the handler clock stops while the device sleeps, so the
+                // time is checked again when the refresh is due
+                long jitter = Math.min(delay, mMaxJitter);
+                if (jitter > 0) {
+                    delay -= (long) (mRandom.nextDouble() * jitter);
+                }
+                postCheck(delay);
+                return;
+            }
+            mRefreshing = true;
+            mRefreshHandler = new Handler();
+            if (!mFacebook.extendAccessToken(mContext, mRefreshListener)) {
+                // the Facebook app is not installed, try again later
+                onRefreshFinished();
+                postCheck(mFacebook.getRefreshTokenBarrier());
+            }
+        }
+    };
+
+    private long getRefreshTime(SessionState session) {
+        long refreshTime = session.getLastAccessUpdate()
+                + mFacebook.getRefreshTokenBarrier();
+        if (session.getAccessExpires() != 0) {
+            refreshTime = Math.min(refreshTime,
+                    session.getAccessExpires() - mRefreshLead);
+        }
+        return Math.max(refreshTime, mNotBefore);
+    }
+
+    /**
+     * Called on the refresh thread when a refresh completes or fails.
+     */
+    private void onRefreshFinished() {
+        mRefreshing = false;
+        Looper looper = mQuitLooper;
+        if (looper != null) {
+            // stop() was called during the refresh
+            mQuitLooper = null;
+            looper.quit();
+        }
+    }
+
+    /**
+     * Back off when the refreshed token still expires within the refresh
+     * lead, as refreshing it again right away would not get a longer lived
+     * one: wait twice as long after each such refresh, up to the refresh
+     * barrier.
+     */
+    private void onRefreshed(SessionState session) {
+        long now = System.currentTimeMillis();
+        long expires = session.getAccessExpires();
+        if (expires == 0 || expires - mRefreshLead > now) {
+            mUnproductiveRefreshes = 0;
+            mNotBefore = 0;
+            return;
+        }
+        long delay = MIN_RETRY_DELAY << Math.min(mUnproductiveRefreshes, 10);
+        mUnproductiveRefreshes++;
+        mNotBefore = now + Math.min(delay,
+                Math.max(mFacebook.getRefreshTokenBarrier(), MIN_RETRY_DELAY));
+    }
+
+    private void onRefreshFailed() {
+        onRefreshFinished();
+        long delay = MIN_RETRY_DELAY << Math.min(mFailures, 6);
+        mFailures++;
+        postCheck(Math.min(delay, MAX_RETRY_DELAY));
+    }
+
+    /**
+     * Run the given result callback on the refresh thread. The result of a
+     * refresh that joined one already in progress (see
+     * Facebook.extendAccessToken()) arrives on the thread of whoever started
+     * that one; the refresh thread cannot have stopped in the meantime, see
+     * stop().
+     */
+    private void onRefreshThread(Runnable callback) {
+        Handler handler = mRefreshHandler;
+        if (handler.getLooper() == Looper.myLooper()) {
+            callback.run();
+        } else {
+            handler.post(callback);
+        }
+    }
+
+    private final Facebook.ServiceListener mRefreshListener =
+            new Facebook.ServiceListener() {
+
+        public void onComplete(final Bundle values) {
+            onRefreshThread(new Runnable() {
+                public void run() {
+                    onRefreshFinished();
+                    mFailures = 0;
+                    onRefreshed(mFacebook.getSession());
+                    reschedule();
+                    if (mListener != null) {
+                        mListener.onComplete(values);
+                    }
+                }
+            });
+        }
+
+        public void onFacebookError(final FacebookError e) {
+            onRefreshThread(new Runnable() {
+                public void run() {
+                    onRefreshFailed();
+                    if (mListener != null) {
+                        mListener.onFacebookError(e);
+                    }
+                }
+            });
+        }
+
+        public void onError(final Error e) {
+            onRefreshThread(new Runnable() {
+                public void run() {
+                    onRefreshFailed();
+                    if (mListener != null) {
+                        mListener.onError(e);
+                    }
+                }
+            });
+        }
+    };
+
+}
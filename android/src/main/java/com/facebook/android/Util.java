@@ -0,0 +1,310 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import android.app.AlertDialog.Builder;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.CookieSyncManager;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * Utility class supporting the Facebook Object.
+ *
+ * @author ssoneff@facebook.com
+ *
+ */
+public final class Util {
+
+    /**
+     * Set this to true to enable log output.  Remember to turn this back off
+     * before releasing.  Sending sensitive data to log is a security risk.
+     */
+    private static boolean ENABLE_LOG = false;
+
+    static {
+        // the platform neutral classes log through the same switch
+        if (ENABLE_LOG) {
+            SdkLog.setLogger(new SdkLog.Logger() {
+                public void d(String tag, String msg) {
+                    Log.d(tag, msg);
+                }
+            });
+        }
+    }
+
+    /**
+     * Generate the multi-part post body providing the parameters and boundary
+     * string
+     *
+     * @param parameters the parameters need to be posted
+     * @param boundary the random string as boundary
+     * @return a string of the post body
+     * @deprecated use {@link MultipartEncoder}, which writes the body as
+     *             UTF-8 bytes without building it as a String first
+     */
+    @Deprecated
+    public static String encodePostBody(Bundle parameters, String boundary) {
+        if (parameters == null) return "";
+        StringBuilder sb = new StringBuilder();
+
+        for (String key : parameters.keySet()) {
+            if (parameters.getByteArray(key) != null) {
+                continue;
+            }
+
+            sb.append("Content-Disposition: form-data; name=\"" + key +
+                    "\"\r\n\r\n" + parameters.getString(key));
+            sb.append("\r\n" + "--" + boundary + "\r\n");
+        }
+
+        return sb.toString();
+    }
+
+    public static String encodeUrl(Bundle parameters) {
+        if (parameters == null) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder(parameters.size() * 32);
+        encodeUrl(parameters, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append the URL encoded string parameters to a builder, e.g. one that
+     * already holds the URL followed by '?'. Parameters whose value is not
+     * a String are skipped.
+     *
+     * @param parameters the parameters to encode
+     * @param sb the builder receiving the query string
+     */
+    public static void encodeUrl(Bundle parameters, StringBuilder sb) {
+        boolean first = true;
+        for (String key : parameters.keySet()) {
+            Object value = parameters.get(key);
+            if (!(value instanceof String)) {
+                continue;
+            }
+            if (first) first = false; else sb.append('&');
+            UrlCodec.encode(key, sb);
+            sb.append('=');
+            UrlCodec.encode((String) value, sb);
+        }
+    }
+
+    public static Bundle decodeUrl(String s) {
+        Bundle params = new Bundle();
+        if (s != null) {
+            UrlCodec.parseQuery(s, 0, s.length(), new BundleHandler(params));
+        }
+        return params;
+    }
+
+    /**
+     * Parse a URL query and fragment parameters into a key-value bundle.
+     * Fragment parameters override query parameters of the same name.
+     *
+     * @param url the URL to parse
+     * @return a dictionary bundle of keys and values
+     */
+    public static Bundle parseUrl(String url) {
+        Bundle params = new Bundle();
+        UrlCodec.parseUrl(url, new BundleHandler(params));
+        return params;
+    }
+
+    private static final class BundleHandler
+            implements UrlCodec.ParameterHandler {
+        private final Bundle mBundle;
+
+        BundleHandler(Bundle bundle) {
+            mBundle = bundle;
+        }
+
+        public void onParameter(String key, String value) {
+            mBundle.putString(key, value);
+        }
+    }
+
+
+    /**
+     * Connect to an HTTP URL and return the response as a string.
+     *
+     * Note that the HTTP method override is used on non-GET requests. (i.e.
+     * requests are made as "POST" with method specified in the body).
+     *
+     * The default timeouts of {@link TimeoutPolicy} are applied.
+     *
+     * @param url - the resource to open: must be a welformed URL
+     * @param method - the HTTP method to use ("GET", "POST", etc.)
+     * @param params - the query parameter for the URL (e.g. access_token=foo)
+     * @return the URL contents as a String
+     * @throws MalformedURLException - if the URL format is invalid
+     * @throws IOException - if a network problem occurs
+     */
+    public static String openUrl(String url, String method, Bundle params)
+            throws MalformedURLException, IOException {
+        return openUrl(url, method, params,
+                TimeoutPolicy.DEFAULT_CONNECT_TIMEOUT,
+                TimeoutPolicy.DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Connect to an HTTP URL and return the response as a string, giving up
+     * if the connection or a read takes longer than the given timeouts.
+     *
+     * @param url - the resource to open: must be a welformed URL
+     * @param method - the HTTP method to use ("GET", "POST", etc.)
+     * @param params - the query parameter for the URL (e.g. access_token=foo)
+     * @param connectTimeout - milliseconds to wait for the connection, or 0
+     *          to wait forever
+     * @param readTimeout - milliseconds to wait for data, or 0 to wait forever
+     * @return the URL contents as a String
+     * @throws MalformedURLException - if the URL format is invalid
+     * @throws SocketTimeoutException - if either timeout expires
+     * @throws IOException - if a network problem occurs
+     */
+    public static String openUrl(String url, String method, Bundle params,
+                                 int connectTimeout, int readTimeout)
+            throws MalformedURLException, IOException {
+        return openUrl(url, method, toRequestParams(params), connectTimeout,
+                readTimeout);
+    }
+
+    /**
+     * Connect to an HTTP URL and return the response as a string.
+     *
+     * @see GraphTransport#openUrl(String, String, RequestParams, int, int)
+     */
+    public static String openUrl(String url, String method,
+                                 RequestParams params, int connectTimeout,
+                                 int readTimeout)
+            throws MalformedURLException, IOException {
+        return GraphTransport.openUrl(url, method, params, connectTimeout,
+                readTimeout);
+    }
+
+    /**
+     * Copy the String and byte array values of a Bundle into RequestParams.
+     * Other values are converted to Strings.
+     *
+     * @param bundle the parameters to copy, may be null
+     * @return the parameters, in the Bundle's iteration order
+     */
+    public static RequestParams toRequestParams(Bundle bundle) {
+        if (bundle == null || bundle.isEmpty()) {
+            return RequestParams.EMPTY;
+        }
+        RequestParams.Builder builder =
+                new RequestParams.Builder(bundle.size() + 2);
+        for (String key : bundle.keySet()) {
+            Object value = bundle.get(key);
+            if (value instanceof byte[]) {
+                builder.put(key, (byte[]) value);
+            } else if (value != null) {
+                builder.put(key, value.toString());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Copy RequestParams into a new Bundle.
+     */
+    public static Bundle toBundle(RequestParams params) {
+        Bundle bundle = new Bundle();
+        for (int i = 0, size = params.size(); i < size; i++) {
+            if (params.isBinary(i)) {
+                bundle.putByteArray(params.getKey(i), params.getBytes(i));
+            } else {
+                bundle.putString(params.getKey(i), params.getString(i));
+            }
+        }
+        return bundle;
+    }
+
+    public static void clearCookies(Context context) {
+        // Edge case: an illegal state exception is thrown if an instance of
+        // CookieSyncManager has not be created.  CookieSyncManager is normally
+        // created by a WebKit view, but this might happen if you start the
+        // app, restore saved state, and click logout before running a UI
+        // dialog in a WebView -- in which case the app crashes
+        @SuppressWarnings("unused")
+        CookieSyncManager cookieSyncMngr =
+                CookieSyncManager.createInstance(context);
+        CookieManager cookieManager = CookieManager.getInstance();
+        cookieManager.removeAllCookie();
+    }
+
+    /**
+     * Parse a server response into a JSON Object, throwing a FacebookError
+     * if it reports an error.
+     *
+     * @see GraphTransport#parseJson(String)
+     */
+    public static JSONObject parseJson(String response)
+            throws JSONException, FacebookError {
+        return GraphTransport.parseJson(response);
+    }
+
+    /**
+     * Extract the error contained in a server response, if any.
+     *
+     * @see GraphTransport#parseError(String)
+     */
+    public static FacebookError parseError(String response) {
+        return GraphTransport.parseError(response);
+    }
+
+    /**
+     * Display a simple alert dialog with the given text and title.
+     *
+     * @param context
+     *          Android context in which the dialog should be displayed
+     * @param title
+     *          Alert dialog title
+     * @param text
+     *          Alert dialog message
+     */
+    public static void showAlert(Context context, String title, String text) {
+        Builder alertBuilder = new Builder(context);
+        alertBuilder.setTitle(title);
+        alertBuilder.setMessage(text);
+        alertBuilder.create().show();
+    }
+
+    /**
+     * A proxy for Log.d api that kills log messages in release build. It
+     * not recommended to send sensitive information to log output in
+     * shipping apps.
+     *
+     * @param tag
+     * @param msg
+     */
+    public static void logd(String tag, String msg) {
+        if (ENABLE_LOG) {
+            Log.d(tag, msg);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class SessionStoreTest {
+
+    /**
+     * A session saved while the saved session is being read, e.g. by an
+     * authorization completing during initializeAsync(), must not be
+     * replaced by the stale session read from disk.
+     */
+    @Test
+    public void sessionSavedDuringRestoreWins() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch saved = new CountDownLatch(1);
+        final Context context = mockContext(new Answer<String>() {
+            public String answer(InvocationOnMock invocation)
+                    throws Throwable {
+                reading.countDown();
+                assertTrue(saved.await(5, TimeUnit.SECONDS));
+                return "stale-token";
+            }
+        });
+
+        final Facebook facebook = new Facebook("350685531728");
+        final AtomicReference<Throwable> failure =
+                new AtomicReference<Throwable>();
+        Thread restoring = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    SessionStore.restore(context, facebook);
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        restoring.start();
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        facebook.setSession("fresh-token", 0);
+        SessionStore.save(context, facebook);
+        saved.countDown();
+        restoring.join(5000);
+        assertNull(failure.get());
+
+        assertEquals("fresh-token", facebook.getAccessToken());
+        // later restores get the saved session, not the one read
+        Facebook restored = new Facebook("350685531728");
+        assertTrue(SessionStore.restore(context, restored));
+        assertEquals("fresh-token", restored.getAccessToken());
+        assertTrue(SessionStore.flush());
+    }
+
+    private static Context mockContext(Answer<String> readToken) {
+        Context context = mock(Context.class);
+        SharedPreferences prefs = mock(SharedPreferences.class);
+        SharedPreferences.Editor editor =
+                mock(SharedPreferences.Editor.class, RETURNS_SELF);
+        when(context.getApplicationContext()).thenReturn(context);
+        when(context.getSharedPreferences(anyString(), anyInt()))
+                .thenReturn(prefs);
+        when(prefs.edit()).thenReturn(editor);
+        when(editor.commit()).thenReturn(true);
+        when(prefs.getString("access_token", null)).thenAnswer(readToken);
+        when(prefs.getLong("expires_in", 0)).thenReturn(0L);
+        return context;
+    }
+
+}
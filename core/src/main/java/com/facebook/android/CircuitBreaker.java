@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+/**
+ * Circuit breaker protecting an endpoint that is failing.
+ *
+ * The breaker records the outcome of the most recent calls. Once enough of
+ * them failed it opens, and calls are rejected immediately instead of
+ * waiting on an endpoint that is unlikely to answer. After a while it lets
+ * a single probe call through (half-open): if the probe succeeds the
+ * breaker closes again, otherwise it stays open for another period.
+ */
+public class CircuitBreaker {
+
+    public static final int STATE_CLOSED = 0;
+    public static final int STATE_OPEN = 1;
+    public static final int STATE_HALF_OPEN = 2;
+
+    private final String mName;
+    private final int mMinimumCalls;
+    private final int mFailurePercent;
+    private final long mOpenDuration;
+
+    // Outcomes of the most recent calls, true for failures.
+    private final boolean[] mOutcomes;
+    private int mNext = 0;
+    private int mCalls = 0;
+    private int mFailures = 0;
+
+    private int mState = STATE_CLOSED;
+    private long mOpenedAt = 0;
+    private boolean mProbing = false;
+
+    /**
+     * Create a breaker opening when half of the last 20 calls failed, and
+     * probing the endpoint again after 30 seconds.
+     *
+     * @param name
+     *            Name of the protected endpoint, used in error messages.
+     */
+    public CircuitBreaker(String name) {
+        this(name, 20, 10, 50, 30L * 1000L);
+    }
+
+    /**
+     * @param name
+     *            Name of the protected endpoint, used in error messages.
+     * @param windowSize
+     *            Number of recent calls whose outcome is considered.
+     * @param minimumCalls
+     *            Number of calls that must be recorded before the breaker
+     *            may open.
+     * @param failurePercent
+     *            Percentage of failed calls that opens the breaker.
+     * @param openDuration
+     *            Time in milliseconds to reject calls before probing.
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls,
+                          int failurePercent, long openDuration) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize
+                || failurePercent < 1 || failurePercent > 100
+                || openDuration < 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings");
+        }
+        mName = name;
+        mOutcomes = new boolean[windowSize];
+        mMinimumCalls = minimumCalls;
+        mFailurePercent = failurePercent;
+        mOpenDuration = openDuration;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Check whether a call may be made now. Every call allowed must be
+     * followed by exactly one call to onSuccess() or onFailure().
+     *
+     * @return false if the call must fail fast
+     */
+    public synchronized boolean allowRequest() {
+        switch (mState) {
+            case STATE_CLOSED:
+                return true;
+            case STATE_OPEN:
+                if (System.currentTimeMillis() - mOpenedAt < mOpenDuration) {
+                    return false;
+                }
+                mState = STATE_HALF_OPEN;
+                mProbing = true;
+                return true;
+            default:
+                // only one probe at a time while half-open
+                if (mProbing) {
+                    return false;
+                }
+                mProbing = true;
+                return true;
+        }
+    }
+
+    /**
+     * Record that an allowed call got an answer from the endpoint.
+     */
+    public synchronized void onSuccess() {
+        if (mState == STATE_HALF_OPEN) {
+            mState = STATE_CLOSED;
+            mProbing = false;
+            reset();
+        } else {
+            record(false);
+        }
+    }
+
+    /**
+     * Record that an allowed call failed because of the endpoint.
+     */
+    public synchronized void onFailure() {
+        if (mState == STATE_HALF_OPEN) {
+            open();
+        } else {
+            record(true);
+            if (mCalls >= mMinimumCalls
+                    && mFailures * 100 >= mFailurePercent * mCalls) {
+                open();
+            }
+        }
+    }
+
+    public synchronized int getState() {
+        return mState;
+    }
+
+    private void open() {
+        mState = STATE_OPEN;
+        mOpenedAt = System.currentTimeMillis();
+        mProbing = false;
+        reset();
+    }
+
+    private void record(boolean failure) {
+        if (mCalls == mOutcomes.length) {
+            if (mOutcomes[mNext]) {
+                mFailures--;
+            }
+        } else {
+            mCalls++;
+        }
+        mOutcomes[mNext] = failure;
+        if (failure) {
+            mFailures++;
+        }
+        mNext = (mNext + 1) % mOutcomes.length;
+    }
+
+    private void reset() {
+        mNext = 0;
+        mCalls = 0;
+        mFailures = 0;
+    }
+
+}
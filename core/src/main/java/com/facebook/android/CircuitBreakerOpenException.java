@@ -16,35 +16,18 @@
 
 package com.facebook.android;
 
+import java.io.IOException;
+
 /**
- * Encapsulation of a Facebook Error: a Facebook request that could not be
- * fulfilled.
- *
- * @author ssoneff@facebook.com
+ * Thrown instead of making a request when the circuit breaker of its
+ * endpoint is open, i.e. the endpoint has recently been failing.
  */
-public class FacebookError extends Throwable {
+public class CircuitBreakerOpenException extends IOException {
 
     private static final long serialVersionUID = 1L;
 
-    private int mErrorCode = 0;
-    private String mErrorType;
-
-    public FacebookError(String message) {
-        super(message);
-    }
-
-    public FacebookError(String message, String type, int code) {
-        super(message);
-        mErrorType = type;
-        mErrorCode = code;
-    }
-
-    public int getErrorCode() {
-        return mErrorCode;
-    }
-
-    public String getErrorType() {
-        return mErrorType;
+    public CircuitBreakerOpenException(String endpoint) {
+        super("Circuit breaker open for " + endpoint);
     }
 
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+/**
+ * Encapsulation of a Facebook Error: a Facebook request that could not be
+ * fulfilled.
+ *
+ * @author ssoneff@facebook.com
+ */
+public class FacebookError extends Throwable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Error codes returned when Facebook is unable to serve the request
+    // right now. See http://developers.facebook.com/docs/reference/api/errors/
+    public static final int API_EC_UNKNOWN = 1;
+    public static final int API_EC_SERVICE = 2;
+    public static final int API_EC_TOO_MANY_CALLS = 4;
+    public static final int API_EC_USER_TOO_MANY_CALLS = 17;
+    public static final int API_EC_APP_LIMIT_REACHED = 341;
+    public static final int API_EC_RATE_LIMIT = 613;
+
+    // Error codes returned when the session or access token of the request
+    // is invalid or expired.
+    public static final int API_EC_PARAM_SESSION_KEY = 102;
+    public static final int API_EC_PARAM_ACCESS_TOKEN = 190;
+
+    public static final String TYPE_OAUTH_EXCEPTION = "OAuthException";
+
+    private int mErrorCode = 0;
+    private String mErrorType;
+
+    public FacebookError(String message) {
+        super(message);
+    }
+
+    public FacebookError(String message, String type, int code) {
+        super(message);
+        mErrorType = type;
+        mErrorCode = code;
+    }
+
+    public int getErrorCode() {
+        return mErrorCode;
+    }
+
+    public String getErrorType() {
+        return mErrorType;
+    }
+
+    /**
+     * @return true if Facebook rejected the request because the application
+     *         or the user made too many calls, i.e. it should be slowed down
+     */
+    public boolean isThrottlingError() {
+        switch (mErrorCode) {
+            case API_EC_TOO_MANY_CALLS:
+            case API_EC_USER_TOO_MANY_CALLS:
+            case API_EC_APP_LIMIT_REACHED:
+            case API_EC_RATE_LIMIT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the error is temporary and the same request may
+     *         succeed when made again later
+     */
+    public boolean isTransientError() {
+        return mErrorCode == API_EC_UNKNOWN
+                || mErrorCode == API_EC_SERVICE
+                || isThrottlingError();
+    }
+
+    /**
+     * @return true if Facebook rejected the request because its access
+     *         token is invalid or expired, i.e. it may succeed with a new
+     *         token
+     */
+    public boolean isTokenError() {
+        if (mErrorCode == API_EC_PARAM_SESSION_KEY
+                || mErrorCode == API_EC_PARAM_ACCESS_TOKEN) {
+            return true;
+        }
+        // older Graph API errors carry a type but no code
+        return mErrorCode == 0 && TYPE_OAUTH_EXCEPTION.equals(mErrorType);
+    }
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+/**
+ * Thread-safe client for the Graph and REST APIs that takes the access token
+ * as an argument of each request, so that a single instance can serve any
+ * number of users at once, e.g. in a backend syncing many accounts.
+ *
+ * All requests made through a client share its timeouts, circuit breakers,
+ * rate limiters, retry budget and worker threads. Rate limits are applied
+ * per application and per access token.
+ *
+ * Example:
+ * <code>
+ *  GraphClient client = new GraphClient("350685531728");
+ *  String me = client.request(userToken, "me", RequestParams.EMPTY, "GET");
+ * </code>
+ */
+public class GraphClient {
+
+    public static final String DEFAULT_GRAPH_BASE_URL =
+            "https://graph.facebook.com/";
+    public static final String DEFAULT_RESTSERVER_URL =
+            "https://api.facebook.com/restserver.php";
+
+    private volatile String mAppId;
+    private volatile String mGraphBaseUrl = DEFAULT_GRAPH_BASE_URL;
+    private volatile String mRestServerUrl = DEFAULT_RESTSERVER_URL;
+
+    private final TimeoutPolicy mTimeoutPolicy = new TimeoutPolicy();
+    private final CircuitBreaker mGraphBreaker = new CircuitBreaker("graph");
+    private final CircuitBreaker mRestBreaker =
+            new CircuitBreaker("restserver");
+    private final RequestThrottle mThrottle;
+    private RequestScheduler mScheduler;
+    private volatile RetryPolicy mRetryPolicy = new RetryPolicy();
+    private final RetryBudget mRetryBudget = new RetryBudget();
+
+    /**
+     * Create a client with default rate limits, retry policy and a pool of
+     * RequestScheduler.DEFAULT_THREAD_COUNT worker threads.
+     *
+     * @param appId
+     *            Facebook application ID, used as key of the application
+     *            rate limit; may be null.
+     */
+    public GraphClient(String appId) {
+        this(appId, new RequestScheduler(), new RequestThrottle());
+    }
+
+    /**
+     * @param appId
+     *            Facebook application ID, used as key of the application
+     *            rate limit; may be null.
+     * @param scheduler
+     *            Runs asynchronous requests; may be shared with other
+     *            clients, or null to create one on the first asynchronous
+     *            request.
+     * @param throttle
+     *            Rate limits applied to all requests; may be shared with
+     *            other clients, or null for none.
+     */
+    public GraphClient(String appId, RequestScheduler scheduler,
+                       RequestThrottle throttle) {
+        mAppId = appId;
+        mScheduler = scheduler;
+        mThrottle = throttle;
+    }
+
+    public String getAppId() {
+        return mAppId;
+    }
+
+    public void setAppId(String appId) {
+        mAppId = appId;
+    }
+
+    /**
+     * Point the client to other servers, e.g. for testing.
+     */
+    public void setEndpoints(String graphBaseUrl, String restServerUrl) {
+        mGraphBaseUrl = graphBaseUrl;
+        mRestServerUrl = restServerUrl;
+    }
+
+    /**
+     * @return the URL Graph paths are appended to, read for each request;
+     *         may be overridden to compute it
+     */
+    public String getGraphBaseUrl() {
+        return mGraphBaseUrl;
+    }
+
+    /**
+     * @return the URL of the old REST API, read for each request; may be
+     *         overridden to compute it
+     */
+    public String getRestServerUrl() {
+        return mRestServerUrl;
+    }
+
+    public TimeoutPolicy getTimeoutPolicy() {
+        return mTimeoutPolicy;
+    }
+
+    public CircuitBreaker getGraphCircuitBreaker() {
+        return mGraphBreaker;
+    }
+
+    public CircuitBreaker getRestCircuitBreaker() {
+        return mRestBreaker;
+    }
+
+    public RequestThrottle getThrottle() {
+        return mThrottle;
+    }
+
+    /**
+     * @return the scheduler running asynchronous requests, created on first
+     *         use if none was given to the constructor
+     */
+    public synchronized RequestScheduler getScheduler() {
+        if (mScheduler == null) {
+            mScheduler = new RequestScheduler();
+        }
+        return mScheduler;
+    }
+
+    /**
+     * Set the policy used by request() to retry failed requests, or null
+     * to never retry. execute() never retries.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Make a single attempt at a request: wait for the rate limits, check
+     * the circuit breaker of the endpoint and call it with the timeouts
+     * configured for it.
+     *
+     * Note that this method blocks waiting for a network response.
+     *
+     * @param accessToken
+     *            Token of the user on whose behalf the request is made, or
+     *            null for a request without a session.
+     * @param graphPath
+     *            Path to resource in the Facebook graph, e.g. "me", or null
+     *            to call the old REST API, in which case the parameters must
+     *            contain "method".
+     * @param params
+     *            Parameters of the request; they are not modified.
+     * @param httpMethod
+     *            http verb, e.g. "GET", "POST", "DELETE"
+     * @return JSON string representation of the response
+     * @throws CircuitBreakerOpenException
+     *            if the endpoint has been failing recently and the request
+     *            was not attempted
+     * @throws IOException
+     *            if a network error occurs
+     */
+    public String execute(String accessToken, String graphPath,
+                          RequestParams params, String httpMethod)
+            throws FileNotFoundException, MalformedURLException, IOException {
+        RequestAttempts attempts = new RequestAttempts(httpMethod, null, null,
+                mThrottle);
+        return attempts.attempt(mAppId, accessToken,
+                newCall(accessToken, graphPath, params, httpMethod));
+    }
+
+    /**
+     * Make a request, retrying it according to the retry policy while it
+     * fails with a retryable network or Facebook error. The response or
+     * exception of the last attempt is returned to the caller.
+     *
+     * Note that this method blocks waiting for a network response.
+     *
+     * See execute() for the parameters.
+     */
+    public String request(String accessToken, String graphPath,
+                          RequestParams params, String httpMethod)
+            throws FileNotFoundException, MalformedURLException, IOException {
+        RequestAttempts attempts = new RequestAttempts(httpMethod,
+                mRetryPolicy, mRetryBudget, mThrottle);
+        RequestAttempts.Call call = newCall(accessToken, graphPath, params,
+                httpMethod);
+        String response;
+        while ((response = attempts.attempt(mAppId, accessToken, call))
+                == null) {
+            RequestAttempts.sleep(attempts.getDelay());
+        }
+        return response;
+    }
+
+    /**
+     * Make a request on one of the client's worker threads. The callback is
+     * invoked on that thread.
+     *
+     * See execute() for the other parameters.
+     *
+     * @param callback
+     *            Notified when the request completes or fails.
+     * @param state
+     *            An arbitrary object passed back to the callback.
+     * @param priority
+     *            One of RequestScheduler.PRIORITY_INTERACTIVE,
+     *            PRIORITY_NORMAL or PRIORITY_BACKGROUND.
+     */
+    public void request(String accessToken, String graphPath,
+                        RequestParams params, String httpMethod,
+                        Callback callback, Object state, int priority) {
+        getScheduler().execute(new AsyncRequest(accessToken, graphPath, params,
+                httpMethod, callback, state, priority), priority);
+    }
+
+    /**
+     * @return a single attempt at the request: check the circuit breaker of
+     *         the endpoint and call it with the timeouts configured for it
+     */
+    private RequestAttempts.Call newCall(String accessToken,
+                                         final String graphPath,
+                                         RequestParams params,
+                                         final String httpMethod) {
+        RequestParams.Builder builder = params.buildUpon();
+        builder.put("format", "json");
+        if (accessToken != null) {
+            builder.put("access_token", accessToken);
+        }
+        final RequestParams request = builder.build();
+        final String endpoint = (graphPath != null) ? graphPath
+                : request.getString("method");
+        final CircuitBreaker breaker = (graphPath != null) ? mGraphBreaker
+                : mRestBreaker;
+        return new RequestAttempts.Call() {
+            public String call() throws IOException {
+                String url = (graphPath != null)
+                        ? getGraphBaseUrl() + graphPath : getRestServerUrl();
+                if (!breaker.allowRequest()) {
+                    throw new CircuitBreakerOpenException(breaker.getName());
+                }
+                // only an unreachable or failing server counts as a
+                // failure: a bad request or a bug does not tell whether the
+                // endpoint is down
+                boolean failed = false;
+                try {
+                    String response = GraphTransport.openUrl(url, httpMethod,
+                            request,
+                            mTimeoutPolicy.getConnectTimeout(endpoint),
+                            mTimeoutPolicy.getReadTimeout(endpoint));
+                    FacebookError error = GraphTransport.parseError(response);
+                    failed = error != null && error.isTransientError()
+                            && !error.isThrottlingError();
+                    return response;
+                } catch (FileNotFoundException e) {
+                    // the server did answer, the resource just does not exist
+                    throw e;
+                } catch (MalformedURLException e) {
+                    throw e;
+                } catch (IOException e) {
+                    failed = true;
+                    throw e;
+                } finally {
+                    if (failed) {
+                        breaker.onFailure();
+                    } else {
+                        breaker.onSuccess();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * An asynchronous request, which requeues itself rather than hold its
+     * worker while waiting for the rate limits or before a retry.
+     */
+    private class AsyncRequest implements Runnable {
+
+        private final String mAccessToken;
+        private final RequestAttempts.Call mCall;
+        private final RequestAttempts mAttempts;
+        private final Callback mCallback;
+        private final Object mState;
+        private final int mPriority;
+
+        AsyncRequest(String accessToken, String graphPath,
+                     RequestParams params, String httpMethod,
+                     Callback callback, Object state, int priority) {
+            mAccessToken = accessToken;
+            mCall = newCall(accessToken, graphPath, params, httpMethod);
+            mAttempts = new RequestAttempts(httpMethod, mRetryPolicy,
+                    mRetryBudget, mThrottle);
+            mCallback = callback;
+            mState = state;
+            mPriority = priority;
+        }
+
+        public void run() {
+            String appId = mAppId;
+            long delay = mAttempts.tryAcquire(appId, mAccessToken);
+            if (delay > 0) {
+                getScheduler().requeue(this, mPriority, delay);
+                return;
+            }
+            String response;
+            try {
+                response = mAttempts.attempt(appId, mAccessToken, mCall);
+            } catch (IOException e) {
+                mCallback.onException(e, mState);
+                return;
+            }
+            if (response == null) {
+                getScheduler().requeue(this, mPriority, mAttempts.getDelay());
+                return;
+            }
+            mCallback.onComplete(response, mState);
+        }
+    }
+
+    /**
+     * Callback interface for asynchronous requests. Methods are executed by
+     * a worker thread of the client.
+     */
+    public static interface Callback {
+
+        /**
+         * Called when a request completes with the given response, which
+         * may describe a Facebook error; see GraphTransport.parseJson().
+         */
+        public void onComplete(String response, Object state);
+
+        /**
+         * Called when a request fails with a network or request error.
+         */
+        public void onException(IOException e, Object state);
+
+    }
+
+}
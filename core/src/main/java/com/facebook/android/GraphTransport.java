@@ -0,0 +1,212 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * HTTP transport and response parsing for API requests. This class does not
+ * depend on Android and can be used on any JVM.
+ */
+public final class GraphTransport {
+
+    private GraphTransport() {}
+
+    /**
+     * Connect to an HTTP URL and return the response as a string, giving up
+     * if the connection or a read takes longer than the given timeouts.
+     *
+     * Note that the HTTP method override is used on non-GET requests. (i.e.
+     * requests are made as "POST" with method specified in the body).
+     *
+     * @param url - the resource to open: must be a welformed URL
+     * @param method - the HTTP method to use ("GET", "POST", etc.)
+     * @param params - the query parameter for the URL (e.g. access_token=foo)
+     * @param connectTimeout - milliseconds to wait for the connection, or 0
+     *          to wait forever
+     * @param readTimeout - milliseconds to wait for data, or 0 to wait forever
+     * @return the URL contents as a String
+     * @throws MalformedURLException - if the URL format is invalid
+     * @throws SocketTimeoutException - if either timeout expires
+     * @throws IOException - if a network problem occurs
+     */
+    public static String openUrl(String url, String method,
+                                 RequestParams params, int connectTimeout,
+                                 int readTimeout)
+            throws MalformedURLException, IOException {
+        // random string as boundary for multi-part http post
+        String strBoundary = "3i2ndDfv2rTHiSisAbouNdArYfORhtTPEefj3q2f";
+
+        OutputStream os;
+
+        if (method.equals("GET")) {
+            StringBuilder sb = new StringBuilder(url.length() + 256);
+            sb.append(url).append('?');
+            UrlCodec.encodeQuery(params, sb);
+            url = sb.toString();
+        }
+        SdkLog.logd("Facebook-Util", method + " URL: " + url);
+        HttpURLConnection conn =
+                (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        conn.setRequestProperty("User-Agent", System.getProperties().
+                getProperty("http.agent") + " FacebookAndroidSDK");
+        if (!method.equals("GET")) {
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty(
+                    "Content-Type",
+                    "multipart/form-data;boundary="+strBoundary);
+            conn.setDoOutput(true);
+            conn.setDoInput(true);
+            conn.setRequestProperty("Connection", "Keep-Alive");
+            conn.connect();
+            os = new BufferedOutputStream(conn.getOutputStream());
+
+            MultipartEncoder encoder = new MultipartEncoder(os, strBoundary);
+            encoder.writeStart();
+            int size = params.size();
+            for (int i = 0; i < size; i++) {
+                String key = params.getKey(i);
+                String value = params.getString(i);
+                if (value == null) {
+                    continue;
+                }
+                if (key.equals("access_token")) {
+                    value = UrlCodec.decode(value, 0, value.length());
+                }
+                encoder.writeField(key, value);
+            }
+            // use method override
+            if (!params.containsKey("method")) {
+                encoder.writeField("method", method);
+            }
+            encoder.writeFieldsEnd();
+            for (int i = 0; i < size; i++) {
+                byte[] data = params.getBytes(i);
+                if (data != null) {
+                    encoder.writeFile(params.getKey(i), data);
+                }
+            }
+            os.flush();
+        }
+
+        String response = "";
+        try {
+            response = read(conn.getInputStream());
+        } catch (FileNotFoundException e) {
+            // Error Stream contains JSON that we can parse to a FB error
+            response = read(conn.getErrorStream());
+        }
+        return response;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        BufferedReader r = new BufferedReader(new InputStreamReader(in), 1000);
+        for (String line = r.readLine(); line != null; line = r.readLine()) {
+            sb.append(line);
+        }
+        in.close();
+        return sb.toString();
+    }
+
+    /**
+     * Parse a server response into a JSON Object. This is a basic
+     * implementation using org.json.JSONObject representation. More
+     * sophisticated applications may wish to do their own parsing.
+     *
+     * The parsed JSON is checked for a variety of error fields and
+     * a FacebookException is thrown if an error condition is set,
+     * populated with the error message and error type or code if
+     * available.
+     *
+     * @param response - string representation of the response
+     * @return the response as a JSON Object
+     * @throws JSONException - if the response is not valid JSON
+     * @throws FacebookError - if an error condition is set
+     */
+    public static JSONObject parseJson(String response)
+            throws JSONException, FacebookError {
+        // Edge case: when sending a POST request to /[post_id]/likes
+        // the return value is 'true' or 'false'. Unfortunately
+        // these values cause the JSONObject constructor to throw
+        // an exception.
+        if (response.equals("false")) {
+            throw new FacebookError("request failed");
+        }
+        if (response.equals("true")) {
+            response = "{value : true}";
+        }
+        JSONObject json = new JSONObject(response);
+
+        // errors set by the server are not consistent
+        // they depend on the method and endpoint
+        if (json.has("error")) {
+            JSONObject error = json.getJSONObject("error");
+            throw new FacebookError(
+                    error.getString("message"), error.getString("type"),
+                    error.optInt("code", 0));
+        }
+        if (json.has("error_code") && json.has("error_msg")) {
+            throw new FacebookError(json.getString("error_msg"), "",
+                    Integer.parseInt(json.getString("error_code")));
+        }
+        if (json.has("error_code")) {
+            throw new FacebookError("request failed", "",
+                    Integer.parseInt(json.getString("error_code")));
+        }
+        if (json.has("error_msg")) {
+            throw new FacebookError(json.getString("error_msg"));
+        }
+        if (json.has("error_reason")) {
+            throw new FacebookError(json.getString("error_reason"));
+        }
+        return json;
+    }
+
+    /**
+     * Extract the error contained in a server response, if any. Unlike
+     * parseJson() this never throws: responses that are not valid JSON are
+     * treated as not carrying an error.
+     *
+     * @param response - string representation of the response
+     * @return the error set in the response, or null if there is none
+     */
+    public static FacebookError parseError(String response) {
+        // cheap check first: most responses are not errors
+        if (response == null || (response.indexOf("error") < 0
+                && !response.equals("false"))) {
+            return null;
+        }
+        try {
+            parseJson(response);
+            return null;
+        } catch (FacebookError e) {
+            return e;
+        } catch (JSONException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
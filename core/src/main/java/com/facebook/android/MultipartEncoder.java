@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a multipart/form-data post body straight to an output stream.
+ *
+ * Header fragments are encoded once, and field names and values are
+ * written as UTF-8 through a small reusable buffer, so no intermediate
+ * Strings or byte arrays are created per field.
+ *
+ * The layout is the one Facebook's servers have always received from this
+ * SDK: an opening delimiter, the text fields, an empty separator part, then
+ * the files, each part being followed by a delimiter.
+ */
+public class MultipartEncoder {
+
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] DASHES = ascii("--");
+    private static final byte[] FIELD_HEADER =
+            ascii("Content-Disposition: form-data; name=\"");
+    private static final byte[] FILE_HEADER =
+            ascii("Content-Disposition: form-data; filename=\"");
+    private static final byte[] FIELD_HEADER_END = ascii("\"\r\n\r\n");
+    private static final byte[] FILE_HEADER_END =
+            ascii("\"\r\nContent-Type: content/unknown\r\n\r\n");
+
+    private final OutputStream mOut;
+    private final byte[] mBoundary;
+    private final byte[] mBuffer = new byte[512];
+
+    /**
+     * @param out
+     *            the stream receiving the body, preferably buffered
+     * @param boundary
+     *            the boundary declared in the Content-Type header; must be
+     *            plain ASCII
+     */
+    public MultipartEncoder(OutputStream out, String boundary) {
+        mOut = out;
+        mBoundary = ascii(boundary);
+    }
+
+    /**
+     * Write the delimiter opening the body.
+     */
+    public void writeStart() throws IOException {
+        writeDelimiter();
+    }
+
+    /**
+     * Write a text field followed by a delimiter.
+     */
+    public void writeField(String name, String value) throws IOException {
+        mOut.write(FIELD_HEADER);
+        writeUtf8(name);
+        mOut.write(FIELD_HEADER_END);
+        writeUtf8(value);
+        mOut.write(CRLF);
+        writeDelimiter();
+    }
+
+    /**
+     * Write the empty part separating the text fields from the files.
+     */
+    public void writeFieldsEnd() throws IOException {
+        mOut.write(CRLF);
+        writeDelimiter();
+    }
+
+    /**
+     * Write binary data, e.g. a picture, followed by a delimiter.
+     */
+    public void writeFile(String filename, byte[] data) throws IOException {
+        mOut.write(FILE_HEADER);
+        writeUtf8(filename);
+        mOut.write(FILE_HEADER_END);
+        mOut.write(data);
+        mOut.write(CRLF);
+        writeDelimiter();
+    }
+
+    private void writeDelimiter() throws IOException {
+        mOut.write(DASHES);
+        mOut.write(mBoundary);
+        mOut.write(CRLF);
+    }
+
+    /**
+     * Write a string as UTF-8, flushing the buffer to the stream whenever
+     * it may not hold another character.
+     */
+    private void writeUtf8(String s) throws IOException {
+        byte[] buffer = mBuffer;
+        int limit = buffer.length - 4;
+        int length = 0;
+        int count = s.length();
+        for (int i = 0; i < count; i++) {
+            if (length > limit) {
+                mOut.write(buffer, 0, length);
+                length = 0;
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < count
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isHighSurrogate(c)
+                    || Character.isLowSurrogate(c)) {
+                buffer[length++] = '?';
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        if (length > 0) {
+            mOut.write(buffer, 0, length);
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token bucket rate limiter keeping a separate bucket for each key, e.g. for
+ * each application id or each access token.
+ *
+ * Each bucket starts at the configured rate. When Facebook reports that a
+ * key is being throttled, onThrottled() halves its rate; every successful
+ * request then raises it again by a small step until the configured rate is
+ * reached. This keeps the request rate just under the limit enforced by the
+ * server without having to know that limit in advance.
+ */
+public class RateLimiter {
+
+    // Buckets idle for longer than this are forgotten once there are many.
+    private static final long IDLE_BUCKET_NANOS = 60L * 1000L * 1000L * 1000L;
+    private static final int BUCKET_CLEANUP_THRESHOLD = 256;
+
+    private final double mRate;
+    private final double mMinRate;
+    private final int mBurst;
+    private final ConcurrentHashMap<String, Bucket> mBuckets =
+            new ConcurrentHashMap<String, Bucket>();
+
+    /**
+     * @param requestsPerSecond
+     *            Sustained rate allowed for each key.
+     * @param burst
+     *            Number of requests that may be made at once by a key that
+     *            has been idle.
+     */
+    public RateLimiter(double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Invalid rate limit settings");
+        }
+        mRate = requestsPerSecond;
+        mMinRate = requestsPerSecond / 32;
+        mBurst = burst;
+    }
+
+    /**
+     * Wait until a request may be made for the given key, and count it.
+     *
+     * @throws InterruptedException
+     *            if the calling thread is interrupted while waiting
+     */
+    public void acquire(String key) throws InterruptedException {
+        long waitNanos = bucket(key).reserve();
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+        }
+    }
+
+    /**
+     * Count a request for the given key if it may be made right away,
+     * without waiting or going into debt otherwise.
+     *
+     * @return 0 if the request was counted, or else the number of
+     *         milliseconds until it may be made
+     */
+    public long tryAcquire(String key) {
+        return bucket(key).tryTake();
+    }
+
+    /**
+     * Give back a request counted by tryAcquire() that was not made.
+     */
+    public void release(String key) {
+        Bucket bucket = mBuckets.get(key);
+        if (bucket != null) {
+            bucket.release();
+        }
+    }
+
+    /**
+     * Slow down the given key after Facebook reported it is being throttled.
+     */
+    public void onThrottled(String key) {
+        bucket(key).decrease();
+    }
+
+    /**
+     * Let the given key speed back up after a successful request.
+     */
+    public void onSuccess(String key) {
+        Bucket bucket = mBuckets.get(key);
+        if (bucket != null) {
+            bucket.increase();
+        }
+    }
+
+    /**
+     * @return the rate currently allowed for the key, in requests per second
+     */
+    public double getRate(String key) {
+        Bucket bucket = mBuckets.get(key);
+        return bucket != null ? bucket.rate() : mRate;
+    }
+
+    private Bucket bucket(String key) {
+        Bucket bucket = mBuckets.get(key);
+        if (bucket == null) {
+            if (mBuckets.size() >= BUCKET_CLEANUP_THRESHOLD) {
+                removeIdleBuckets();
+            }
+            bucket = new Bucket();
+            Bucket previous = mBuckets.putIfAbsent(key, bucket);
+            if (previous != null) {
+                bucket = previous;
+            }
+        }
+        return bucket;
+    }
+
+    private void removeIdleBuckets() {
+        long now = System.nanoTime();
+        for (Iterator<Bucket> it = mBuckets.values().iterator(); it.hasNext();) {
+            if (it.next().isIdle(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private class Bucket {
+        private double mBucketRate = mRate;
+        private double mTokens = mBurst;
+        private long mLastRefill = System.nanoTime();
+
+        /**
+         * Take a token, going into debt if none is left.
+         *
+         * @return the time to wait before the token may be used
+         */
+        synchronized long reserve() {
+            refill(System.nanoTime());
+            mTokens -= 1;
+            if (mTokens >= 0) {
+                return 0;
+            }
+            return (long) (-mTokens / mBucketRate * 1e9);
+        }
+
+        /**
+         * Take a token if one is left.
+         *
+         * @return 0 if a token was taken, or else the time in milliseconds
+         *         until one is available
+         */
+        synchronized long tryTake() {
+            refill(System.nanoTime());
+            if (mTokens >= 1) {
+                mTokens -= 1;
+                return 0;
+            }
+            return 1 + (long) ((1 - mTokens) / mBucketRate * 1e3);
+        }
+
+        synchronized void release() {
+            mTokens = Math.min(mBurst, mTokens + 1);
+        }
+
+        synchronized void decrease() {
+            mBucketRate = Math.max(mMinRate, mBucketRate / 2);
+            // drop any saved up burst so the slowdown applies right away
+            mTokens = Math.min(mTokens, 0);
+        }
+
+        synchronized void increase() {
+            if (mBucketRate < mRate) {
+                mBucketRate = Math.min(mRate, mBucketRate + mRate / 16);
+            }
+        }
+
+        synchronized double rate() {
+            return mBucketRate;
+        }
+
+        synchronized boolean isIdle(long now) {
+            return mBucketRate >= mRate
+                    && now - mLastRefill > IDLE_BUCKET_NANOS;
+        }
+
+        private void refill(long now) {
+            mTokens = Math.min(mBurst,
+                    mTokens + (now - mLastRefill) / 1e9 * mBucketRate);
+            mLastRefill = now;
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * The attempts made at a single request: waits for the rate limits before
+ * each one, feeds Facebook's answer back to them, and decides whether a
+ * failure should be retried according to a retry policy and budget.
+ *
+ * The caller drives the attempts, so that it can wait between them however
+ * suits it, e.g. by blocking, or by requeueing the request after checking
+ * tryAcquire() and getDelay():
+ * <code>
+ *  RequestAttempts attempts = new RequestAttempts(method, policy, budget,
+ *          throttle);
+ *  String response;
+ *  while ((response = attempts.attempt(appId, token, call)) == null) {
+ *      RequestAttempts.sleep(attempts.getDelay());
+ *  }
+ * </code>
+ *
+ * Instances are not thread-safe; the policy, budget and throttle they use
+ * may be shared.
+ */
+public class RequestAttempts {
+
+    private final RetryPolicy mPolicy;
+    private final RetryBudget mBudget;
+    private final RequestThrottle mThrottle;
+    private final boolean mRetryable;
+    private int mAttempts;
+    private long mDelay;
+    private FacebookError mLastError;
+    // whether tryAcquire() counted the next attempt against the rate limits
+    private boolean mAcquired;
+
+    /**
+     * @param httpMethod
+     *            http verb of the request, e.g. "GET", "POST", "DELETE"
+     * @param policy
+     *            policy deciding which failures are retried, or null to
+     *            never retry
+     * @param budget
+     *            budget every retry is taken from, or null for no limit
+     * @param throttle
+     *            rate limits waited for before each attempt, or null for
+     *            none
+     */
+    public RequestAttempts(String httpMethod, RetryPolicy policy,
+                           RetryBudget budget, RequestThrottle throttle) {
+        mPolicy = policy;
+        mBudget = budget;
+        mThrottle = throttle;
+        mRetryable = policy != null && policy.isRetryable(httpMethod);
+    }
+
+    /**
+     * Count the next attempt against the rate limits if it may be made
+     * right away, so that attempt() does not wait for them. Callers that
+     * must not block, e.g. tasks on a RequestScheduler, call this first and
+     * try again after the returned delay.
+     *
+     * See attempt() for the parameters.
+     *
+     * @return 0 if the attempt may be made, or else the number of
+     *         milliseconds to wait before trying again
+     */
+    public long tryAcquire(String appId, String accessToken) {
+        if (mAcquired || mThrottle == null) {
+            return 0;
+        }
+        long wait = mThrottle.tryAcquire(appId, accessToken);
+        mAcquired = wait == 0;
+        return wait;
+    }
+
+    /**
+     * Make the next attempt at the request, waiting for the rate limits
+     * unless tryAcquire() allowed it.
+     *
+     * @param appId
+     *            Facebook application ID, used as key of the application
+     *            rate limit; may be null.
+     * @param accessToken
+     *            access token the attempt is made with, used as key of the
+     *            user rate limit; may be null.
+     * @param call
+     *            makes the request
+     * @return the response, which may describe a Facebook error that is
+     *         not to be retried, or null if the request should be made
+     *         again after getDelay() milliseconds
+     * @throws IOException
+     *            if the attempt failed with a network error that is not to
+     *            be retried
+     */
+    public String attempt(String appId, String accessToken, Call call)
+            throws IOException {
+        if (mAttempts++ == 0 && mBudget != null) {
+            mBudget.onRequest();
+        }
+        boolean canRetry = mRetryable && mAttempts < mPolicy.getMaxAttempts();
+        mLastError = null;
+        String response;
+        try {
+            if (mThrottle != null && !mAcquired) {
+                mThrottle.acquire(appId, accessToken);
+            }
+            mAcquired = false;
+            response = call.call();
+        } catch (IOException e) {
+            if (canRetry && mPolicy.isRetryable(e) && retry()) {
+                SdkLog.logd("Facebook-Retry", "Retrying after " + e);
+                return null;
+            }
+            throw e;
+        }
+        FacebookError error = GraphTransport.parseError(response);
+        mLastError = error;
+        if (mThrottle != null) {
+            mThrottle.update(appId, accessToken, error);
+        }
+        if (canRetry && error != null && mPolicy.isRetryable(error)
+                && retry()) {
+            SdkLog.logd("Facebook-Retry", "Retrying after " + error);
+            return null;
+        }
+        return response;
+    }
+
+    private boolean retry() {
+        if (mBudget != null && !mBudget.tryAcquireRetry()) {
+            return false;
+        }
+        mDelay = mPolicy.getBackoff(mAttempts);
+        return true;
+    }
+
+    /**
+     * @return number of attempts made so far
+     */
+    public int getAttempts() {
+        return mAttempts;
+    }
+
+    /**
+     * @return milliseconds to wait before the next attempt, after attempt()
+     *         returned null
+     */
+    public long getDelay() {
+        return mDelay;
+    }
+
+    /**
+     * @return the Facebook error returned by the last attempt, or null if
+     *         it succeeded or failed with a network error
+     */
+    public FacebookError getLastError() {
+        return mLastError;
+    }
+
+    /**
+     * Block the current thread between two attempts.
+     *
+     * @throws InterruptedIOException
+     *            if the thread is interrupted while waiting
+     */
+    public static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to retry");
+        }
+    }
+
+    /**
+     * A single attempt at a request.
+     */
+    public static interface Call {
+
+        /**
+         * @return JSON string representation of the response
+         */
+        public String call() throws IOException;
+
+    }
+
+}
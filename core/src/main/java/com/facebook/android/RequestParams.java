@@ -0,0 +1,271 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+/**
+ * Immutable, ordered list of request parameters.
+ *
+ * Values are either Strings or byte arrays (e.g. pictures to upload);
+ * numbers and booleans are converted to Strings when they are added, so no
+ * boxing takes place. Parameters keep the order in which they were first
+ * added. Instances are created with a Builder, which can be reused:
+ *
+ * <code>
+ *  RequestParams.Builder builder = new RequestParams.Builder();
+ *  RequestParams params = builder.put("q", "facebook")
+ *          .put("limit", 25)
+ *          .build();
+ * </code>
+ *
+ * Since instances never change they can be shared between threads, and
+ * passing one to a request does not modify it.
+ */
+public final class RequestParams {
+
+    public static final RequestParams EMPTY =
+            new RequestParams(new String[0], new Object[0], 0);
+
+    private final String[] mKeys;
+    private final Object[] mValues;
+    private final int mSize;
+
+    private RequestParams(String[] keys, Object[] values, int size) {
+        mKeys = keys;
+        mValues = values;
+        mSize = size;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public String getKey(int index) {
+        checkIndex(index);
+        return mKeys[index];
+    }
+
+    /**
+     * @return the value at the given index, or null if it is binary
+     */
+    public String getString(int index) {
+        checkIndex(index);
+        Object value = mValues[index];
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * @return the value at the given index, or null if it is not binary
+     */
+    public byte[] getBytes(int index) {
+        checkIndex(index);
+        Object value = mValues[index];
+        return value instanceof byte[] ? (byte[]) value : null;
+    }
+
+    public boolean isBinary(int index) {
+        checkIndex(index);
+        return mValues[index] instanceof byte[];
+    }
+
+    /**
+     * @return the position of the parameter with the given key, or -1
+     */
+    public int indexOf(String key) {
+        return indexOf(mKeys, mSize, key);
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the String value of the given key, or null if there is no
+     *         such parameter or it is binary
+     */
+    public String getString(String key) {
+        int index = indexOf(key);
+        return index >= 0 ? getString(index) : null;
+    }
+
+    /**
+     * @return a builder holding a copy of these parameters
+     */
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Invalid index " + index
+                    + ", size is " + mSize);
+        }
+    }
+
+    private static int indexOf(String[] keys, int size, String key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds RequestParams. Putting a key that is already present replaces
+     * its value but keeps its position.
+     *
+     * build() does not copy the parameters; the builder makes its own copy
+     * only if it is changed afterwards, so building once and discarding the
+     * builder costs a single set of arrays.
+     */
+    public static final class Builder {
+
+        private String[] mKeys;
+        private Object[] mValues;
+        private int mSize = 0;
+        private boolean mShared = false;
+
+        public Builder() {
+            this(8);
+        }
+
+        /**
+         * @param capacity
+         *            Number of parameters expected, to avoid growing.
+         */
+        public Builder(int capacity) {
+            mKeys = new String[Math.max(capacity, 1)];
+            mValues = new Object[mKeys.length];
+        }
+
+        /**
+         * Create a builder holding the given parameters, with room for a
+         * few more.
+         */
+        public Builder(RequestParams params) {
+            this(params.mSize + 4);
+            System.arraycopy(params.mKeys, 0, mKeys, 0, params.mSize);
+            System.arraycopy(params.mValues, 0, mValues, 0, params.mSize);
+            mSize = params.mSize;
+        }
+
+        public Builder put(String key, String value) {
+            return set(key, value);
+        }
+
+        public Builder put(String key, byte[] value) {
+            return set(key, value);
+        }
+
+        public Builder put(String key, int value) {
+            return set(key, Integer.toString(value));
+        }
+
+        public Builder put(String key, long value) {
+            return set(key, Long.toString(value));
+        }
+
+        public Builder put(String key, boolean value) {
+            return set(key, value ? "true" : "false");
+        }
+
+        public Builder remove(String key) {
+            int index = indexOf(mKeys, mSize, key);
+            if (index >= 0) {
+                ensureWritable(mKeys.length);
+                System.arraycopy(mKeys, index + 1, mKeys, index,
+                        mSize - index - 1);
+                System.arraycopy(mValues, index + 1, mValues, index,
+                        mSize - index - 1);
+                mSize--;
+                mKeys[mSize] = null;
+                mValues[mSize] = null;
+            }
+            return this;
+        }
+
+        public boolean containsKey(String key) {
+            return indexOf(mKeys, mSize, key) >= 0;
+        }
+
+        /**
+         * Remove all parameters so that the builder can be reused.
+         */
+        public Builder clear() {
+            if (mShared) {
+                mKeys = new String[mKeys.length];
+                mValues = new Object[mKeys.length];
+                mShared = false;
+            } else {
+                for (int i = 0; i < mSize; i++) {
+                    mKeys[i] = null;
+                    mValues[i] = null;
+                }
+            }
+            mSize = 0;
+            return this;
+        }
+
+        public RequestParams build() {
+            if (mSize == 0) {
+                return EMPTY;
+            }
+            mShared = true;
+            return new RequestParams(mKeys, mValues, mSize);
+        }
+
+        private Builder set(String key, Object value) {
+            if (key == null || value == null) {
+                throw new IllegalArgumentException(
+                        "Parameter keys and values must not be null");
+            }
+            int index = indexOf(mKeys, mSize, key);
+            if (index >= 0) {
+                ensureWritable(mKeys.length);
+                mValues[index] = value;
+            } else {
+                ensureWritable(mSize == mKeys.length
+                        ? mKeys.length * 2 : mKeys.length);
+                mKeys[mSize] = key;
+                mValues[mSize] = value;
+                mSize++;
+            }
+            return this;
+        }
+
+        /**
+         * Make sure the arrays are not shared with a built instance and can
+         * hold the given number of parameters.
+         */
+        private void ensureWritable(int capacity) {
+            if (mShared || capacity > mKeys.length) {
+                String[] keys = new String[capacity];
+                Object[] values = new Object[capacity];
+                System.arraycopy(mKeys, 0, keys, 0, mSize);
+                System.arraycopy(mValues, 0, values, 0, mSize);
+                mKeys = keys;
+                mValues = values;
+                mShared = false;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Runs queued tasks on a bounded pool of worker threads, highest priority
+ * first and in submission order within a priority.
+ *
+ * Three priorities are supported: interactive work the user is waiting
+ * for, normal work, and background work such as prefetching. Background
+ * work can be paused as a whole, and long running background tasks are
+ * expected to check shouldYield() between steps and hand their worker back
+ * with requeue() when more urgent work is waiting. Tasks that have to wait,
+ * e.g. for a rate limit or before a retry, should requeue themselves with a
+ * delay rather than sleep on their worker.
+ *
+ * Worker threads are started on demand and stop after being idle for a
+ * minute.
+ */
+public class RequestScheduler {
+
+    public static final int PRIORITY_INTERACTIVE = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_BACKGROUND = 2;
+
+    public static final int DEFAULT_THREAD_COUNT = 4;
+
+    private static final long KEEP_ALIVE = 60L * 1000L;
+
+    // One FIFO queue per priority.
+    private final LinkedList<Runnable> mInteractive = new LinkedList<Runnable>();
+    private final LinkedList<Runnable> mNormal = new LinkedList<Runnable>();
+    private final LinkedList<Runnable> mBackground = new LinkedList<Runnable>();
+
+    private final int mThreadCount;
+    private int mStartedThreads = 0;
+    private int mIdleThreads = 0;
+    private int mRunningTasks = 0;
+    private int mThreadId = 0;
+    private boolean mBackgroundPaused = false;
+    // runs delayed requeues; created on first use
+    private Timer mTimer;
+
+    public RequestScheduler() {
+        this(DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * @param threadCount
+     *            Maximum number of tasks running at the same time.
+     */
+    public RequestScheduler(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mThreadCount = threadCount;
+    }
+
+    /**
+     * Queue a task to be run by a worker thread.
+     *
+     * @param task
+     *            the work to do
+     * @param priority
+     *            one of PRIORITY_INTERACTIVE, PRIORITY_NORMAL or
+     *            PRIORITY_BACKGROUND
+     */
+    public synchronized void execute(Runnable task, int priority) {
+        queue(priority).addLast(task);
+        dispatch();
+    }
+
+    /**
+     * Put a task that gave up its worker back at the head of its queue, so
+     * that it resumes before tasks of the same priority submitted after it.
+     */
+    public synchronized void requeue(Runnable task, int priority) {
+        queue(priority).addFirst(task);
+        dispatch();
+    }
+
+    /**
+     * Put a task that gave up its worker back at the head of its queue once
+     * the given delay has elapsed, without holding a worker meanwhile.
+     *
+     * @param delayMillis
+     *            milliseconds to wait before queueing the task
+     */
+    public synchronized void requeue(final Runnable task, final int priority,
+                                     long delayMillis) {
+        if (delayMillis <= 0) {
+            requeue(task, priority);
+            return;
+        }
+        // fail now rather than on the timer thread
+        queue(priority);
+        if (mTimer == null) {
+            mTimer = new Timer("Facebook-RequestTimer", true);
+        }
+        mTimer.schedule(new TimerTask() {
+            public void run() {
+                requeue(task, priority);
+            }
+        }, delayMillis);
+    }
+
+    /**
+     * Check whether a running task of the given priority should stop and
+     * requeue itself: background tasks yield while background work is
+     * paused, or when more urgent work is waiting and no worker, idle or
+     * yet to be started, is left to run it.
+     */
+    public synchronized boolean shouldYield(int priority) {
+        if (priority != PRIORITY_BACKGROUND) {
+            return false;
+        }
+        if (mBackgroundPaused) {
+            return true;
+        }
+        int waiting = mInteractive.size() + mNormal.size();
+        return waiting > mThreadCount - mRunningTasks;
+    }
+
+    /**
+     * Stop starting background tasks until resumeBackground() is called.
+     * Running background tasks finish their current step first.
+     */
+    public synchronized void pauseBackground() {
+        mBackgroundPaused = true;
+    }
+
+    public synchronized void resumeBackground() {
+        mBackgroundPaused = false;
+        dispatch();
+    }
+
+    public synchronized boolean isBackgroundPaused() {
+        return mBackgroundPaused;
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker
+     */
+    public synchronized int getPendingCount() {
+        return mInteractive.size() + mNormal.size() + mBackground.size();
+    }
+
+    private LinkedList<Runnable> queue(int priority) {
+        switch (priority) {
+            case PRIORITY_INTERACTIVE:
+                return mInteractive;
+            case PRIORITY_NORMAL:
+                return mNormal;
+            case PRIORITY_BACKGROUND:
+                return mBackground;
+            default:
+                throw new IllegalArgumentException("Unknown priority: "
+                        + priority);
+        }
+    }
+
+    private Runnable poll() {
+        if (!mInteractive.isEmpty()) {
+            return mInteractive.removeFirst();
+        }
+        if (!mNormal.isEmpty()) {
+            return mNormal.removeFirst();
+        }
+        if (!mBackgroundPaused && !mBackground.isEmpty()) {
+            return mBackground.removeFirst();
+        }
+        return null;
+    }
+
+    private int runnableCount() {
+        return mInteractive.size() + mNormal.size()
+                + (mBackgroundPaused ? 0 : mBackground.size());
+    }
+
+    /**
+     * Wake idle workers and start new ones while there is more runnable work
+     * than idle workers. Must be called with the lock held.
+     */
+    private void dispatch() {
+        int runnable = runnableCount();
+        if (runnable == 0) {
+            return;
+        }
+        notifyAll();
+        int missing = Math.min(runnable - mIdleThreads,
+                mThreadCount - mStartedThreads);
+        for (int i = 0; i < missing; i++) {
+            mStartedThreads++;
+            Thread worker = new Thread(new Worker(),
+                    "Facebook-Request-" + (++mThreadId));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Take the next task to run, waiting for one if necessary.
+     *
+     * @param ranTask
+     *            whether the calling worker just finished running a task
+     * @return the task, or null if the calling worker should exit
+     */
+    private synchronized Runnable take(boolean ranTask) {
+        if (ranTask) {
+            mRunningTasks--;
+        }
+        long idleSince = System.currentTimeMillis();
+        while (true) {
+            Runnable task = poll();
+            if (task != null) {
+                mRunningTasks++;
+                return task;
+            }
+            long idle = System.currentTimeMillis() - idleSince;
+            if (idle >= KEEP_ALIVE) {
+                mStartedThreads--;
+                return null;
+            }
+            mIdleThreads++;
+            try {
+                wait(KEEP_ALIVE - idle);
+            } catch (InterruptedException e) {
+                mStartedThreads--;
+                return null;
+            } finally {
+                mIdleThreads--;
+            }
+        }
+    }
+
+    /**
+     * Forget a worker killed by an exception thrown from its task, and
+     * replace it if there is work left.
+     */
+    private synchronized void workerDied() {
+        mRunningTasks--;
+        mStartedThreads--;
+        dispatch();
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            boolean exited = false;
+            try {
+                for (Runnable task = take(false); task != null;
+                        task = take(true)) {
+                    task.run();
+                }
+                exited = true;
+            } finally {
+                // let the exception reach the thread's uncaught exception
+                // handler, as it did when each request had its own thread
+                if (!exited) {
+                    workerDied();
+                }
+            }
+        }
+    }
+
+}
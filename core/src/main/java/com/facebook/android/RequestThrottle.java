@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Pair of rate limiters applied to requests: one keyed by application id,
+ * shared by all users of the application, and one keyed by access token.
+ *
+ * Throttling errors reported by Facebook slow down the matching limiter,
+ * and successful requests let both speed back up.
+ */
+public class RequestThrottle {
+
+    private volatile RateLimiter mAppLimiter;
+    private volatile RateLimiter mTokenLimiter;
+
+    /**
+     * Create a throttle allowing 20 requests per second (bursts of 40) per
+     * application and 5 requests per second (bursts of 10) per user.
+     */
+    public RequestThrottle() {
+        this(new RateLimiter(20, 40), new RateLimiter(5, 10));
+    }
+
+    /**
+     * @param appLimiter
+     *            limiter keyed by application id, or null for none
+     * @param tokenLimiter
+     *            limiter keyed by access token, or null for none
+     */
+    public RequestThrottle(RateLimiter appLimiter, RateLimiter tokenLimiter) {
+        mAppLimiter = appLimiter;
+        mTokenLimiter = tokenLimiter;
+    }
+
+    public void setAppRateLimiter(RateLimiter rateLimiter) {
+        mAppLimiter = rateLimiter;
+    }
+
+    public RateLimiter getAppRateLimiter() {
+        return mAppLimiter;
+    }
+
+    public void setTokenRateLimiter(RateLimiter rateLimiter) {
+        mTokenLimiter = rateLimiter;
+    }
+
+    public RateLimiter getTokenRateLimiter() {
+        return mTokenLimiter;
+    }
+
+    /**
+     * Wait until both the application and the user are allowed to make
+     * another request.
+     *
+     * @throws InterruptedIOException
+     *            if the thread is interrupted while waiting
+     */
+    public void acquire(String appId, String token)
+            throws InterruptedIOException {
+        RateLimiter appLimiter = mAppLimiter;
+        RateLimiter tokenLimiter = mTokenLimiter;
+        try {
+            if (appLimiter != null && appId != null) {
+                appLimiter.acquire(appId);
+            }
+            if (tokenLimiter != null && token != null) {
+                tokenLimiter.acquire(token);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for rate limit");
+        }
+    }
+
+    /**
+     * Count a request if both the application and the user may make it
+     * right away, without waiting otherwise.
+     *
+     * @return 0 if the request was counted, or else the number of
+     *         milliseconds to wait before trying again
+     */
+    public long tryAcquire(String appId, String token) {
+        RateLimiter appLimiter = mAppLimiter;
+        RateLimiter tokenLimiter = mTokenLimiter;
+        boolean appCounted = false;
+        if (appLimiter != null && appId != null) {
+            long wait = appLimiter.tryAcquire(appId);
+            if (wait > 0) {
+                return wait;
+            }
+            appCounted = true;
+        }
+        if (tokenLimiter != null && token != null) {
+            long wait = tokenLimiter.tryAcquire(token);
+            if (wait > 0) {
+                if (appCounted) {
+                    appLimiter.release(appId);
+                }
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Slow down the limiter matching a throttling error, or let both speed
+     * back up after a successful request. Application level limits are
+     * reported with codes 4 and 341, user level limits with 17 and 613.
+     */
+    public void update(String appId, String token, FacebookError error) {
+        RateLimiter appLimiter = mAppLimiter;
+        RateLimiter tokenLimiter = mTokenLimiter;
+        if (error == null) {
+            if (appLimiter != null && appId != null) {
+                appLimiter.onSuccess(appId);
+            }
+            if (tokenLimiter != null && token != null) {
+                tokenLimiter.onSuccess(token);
+            }
+        } else if (error.isThrottlingError()) {
+            int code = error.getErrorCode();
+            boolean appLevel = code == FacebookError.API_EC_TOO_MANY_CALLS
+                    || code == FacebookError.API_EC_APP_LIMIT_REACHED;
+            if (appLevel && appLimiter != null && appId != null) {
+                appLimiter.onThrottled(appId);
+            } else if (!appLevel && tokenLimiter != null && token != null) {
+                tokenLimiter.onThrottled(token);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+/**
+ * Limits the number of retries relative to the number of requests made, so
+ * that retrying cannot multiply the load on Facebook while it is already
+ * failing.
+ *
+ * Every request adds a fraction of a retry to the budget, and every retry
+ * takes a whole one. When the budget is exhausted, failed requests are
+ * reported to the caller instead of being made again.
+ */
+public class RetryBudget {
+
+    // Budget is tracked in hundredths of a retry.
+    private static final int UNIT = 100;
+
+    private final int mDepositPerRequest;
+    private final int mMaxBalance;
+    private int mBalance;
+
+    /**
+     * Create a budget allowing 10% of requests to be retried, with a burst
+     * of up to 10 retries.
+     */
+    public RetryBudget() {
+        this(10, 10);
+    }
+
+    /**
+     * @param retryPercent
+     *            Retries allowed per hundred requests.
+     * @param maxRetries
+     *            Retries that may be saved up, which is also the budget
+     *            available before any request was made.
+     */
+    public RetryBudget(int retryPercent, int maxRetries) {
+        if (retryPercent < 0 || maxRetries < 0) {
+            throw new IllegalArgumentException("Invalid retry budget settings");
+        }
+        mDepositPerRequest = retryPercent * UNIT / 100;
+        mMaxBalance = maxRetries * UNIT;
+        mBalance = mMaxBalance;
+    }
+
+    /**
+     * Record that a new request (not a retry) is being made.
+     */
+    public synchronized void onRequest() {
+        mBalance = Math.min(mMaxBalance, mBalance + mDepositPerRequest);
+    }
+
+    /**
+     * Take one retry from the budget.
+     *
+     * @return true if the retry may be made, false if the budget is spent
+     */
+    public synchronized boolean tryAcquireRetry() {
+        if (mBalance < UNIT) {
+            return false;
+        }
+        mBalance -= UNIT;
+        return true;
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Random;
+
+/**
+ * Decides whether a failed request should be made again, and how long to
+ * wait before doing so.
+ *
+ * Only GET requests are retried by default, since making any other request
+ * twice may have side effects (e.g. posting the same story twice). Retries
+ * of other HTTP methods can be enabled with setRetryNonIdempotent().
+ *
+ * The wait before the n-th retry grows exponentially from the initial
+ * backoff up to the maximum backoff; half of it is randomized so that
+ * clients failing at the same moment do not all come back at once.
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF = 500L;
+    public static final long DEFAULT_MAX_BACKOFF = 8L * 1000L;
+
+    private final int mMaxAttempts;
+    private final long mInitialBackoff;
+    private final long mMaxBackoff;
+    private volatile boolean mRetryNonIdempotent = false;
+    private final Random mRandom = new Random();
+
+    /**
+     * Create a policy with the default settings: up to 3 attempts, waiting
+     * between 0.5 and 8 seconds between them.
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * @param maxAttempts
+     *            Total number of times a request may be made, including
+     *            the first one. 1 disables retries.
+     * @param initialBackoff
+     *            Wait before the first retry, in milliseconds.
+     * @param maxBackoff
+     *            Upper bound of the wait before any retry, in milliseconds.
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff) {
+        if (maxAttempts < 1 || initialBackoff < 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("Invalid retry policy settings");
+        }
+        mMaxAttempts = maxAttempts;
+        mInitialBackoff = initialBackoff;
+        mMaxBackoff = maxBackoff;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * Allow requests that are not GETs to be retried. Only enable this if
+     * the application can cope with the same call being applied twice.
+     */
+    public void setRetryNonIdempotent(boolean retryNonIdempotent) {
+        mRetryNonIdempotent = retryNonIdempotent;
+    }
+
+    /**
+     * @param httpMethod
+     *            http verb of the request, e.g. "GET", "POST", "DELETE"
+     * @return true if requests made with this method may be retried at all
+     */
+    public boolean isRetryable(String httpMethod) {
+        return mMaxAttempts > 1
+                && ("GET".equals(httpMethod) || mRetryNonIdempotent);
+    }
+
+    /**
+     * @return true if the network error may go away when trying again.
+     *         Missing resources and invalid URLs never do, and requests
+     *         rejected by an open circuit breaker should not be hammered.
+     */
+    public boolean isRetryable(IOException e) {
+        return !(e instanceof FileNotFoundException)
+                && !(e instanceof MalformedURLException)
+                && !(e instanceof CircuitBreakerOpenException);
+    }
+
+    /**
+     * @return true if Facebook reported a temporary failure, such as
+     *         service unavailability or throttling.
+     */
+    public boolean isRetryable(FacebookError e) {
+        return e.isTransientError();
+    }
+
+    /**
+     * Compute how long to wait before the given retry.
+     *
+     * @param attempt
+     *            number of attempts made so far (1 after the first failure)
+     * @return the wait in milliseconds
+     */
+    public long getBackoff(int attempt) {
+        long backoff = mInitialBackoff;
+        for (int i = 1; i < attempt && backoff < mMaxBackoff; i++) {
+            backoff <<= 1;
+        }
+        backoff = Math.min(backoff, mMaxBackoff);
+        long half = backoff / 2;
+        synchronized (mRandom) {
+            return half + (long) (mRandom.nextDouble() * (backoff - half));
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.android;
+
+/**
+ * Debug logging for the platform neutral classes of the SDK.
+ *
+ * Nothing is logged unless a Logger is installed. On Android, Util installs
+ * one forwarding to android.util.Log when its log output is enabled; other
+ * platforms may install their own. It is not recommended to send sensitive
+ * information to log output in shipping apps.
+ */
+public final class SdkLog {
+
+    /**
+     * Destination of debug log messages.
+     */
+    public static interface Logger {
+        public void d(String tag, String msg);
+    }
+
+    private static volatile Logger sLogger = null;
+
+    private SdkLog() {}
+
+    /**
+     * Install the logger receiving debug messages, or null to drop them.
+     */
+    public static void setLogger(Logger logger) {
+        sLogger = logger;
+    }
+
+    public static void logd(String tag, String msg) {
+        Logger logger = sLogger;
+        if (logger != null) {
+            logger.d(tag, msg);
+        }
+    }
+
+}
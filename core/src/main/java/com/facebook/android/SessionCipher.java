@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Encrypts strings such as access tokens for storage, with AES in CBC mode
+ * authenticated by an HMAC-SHA256 of the IV and ciphertext.
+ *
+ * The encryption and MAC keys are derived from the master key once, when
+ * the cipher is created; keep one instance per process. Instances are
+ * thread-safe.
+ */
+public final class SessionCipher {
+
+    /** Length in bytes of a master key created by generateKey(). */
+    public static final int KEY_LENGTH = 32;
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int IV_LENGTH = 16;
+    private static final int MAC_LENGTH = 32;
+
+    private final SecretKeySpec mEncryptionKey;
+    private final SecretKeySpec mMacKey;
+    private final SecureRandom mRandom = new SecureRandom();
+
+    /**
+     * @param masterKey
+     *            secret key material, e.g. from generateKey()
+     */
+    public SessionCipher(byte[] masterKey) throws GeneralSecurityException {
+        byte[] encryptionKey = new byte[16];
+        System.arraycopy(derive(masterKey, 1), 0, encryptionKey, 0, 16);
+        mEncryptionKey = new SecretKeySpec(encryptionKey, "AES");
+        mMacKey = new SecretKeySpec(derive(masterKey, 2), MAC_ALGORITHM);
+    }
+
+    /**
+     * @return a new random master key of KEY_LENGTH bytes
+     */
+    public static byte[] generateKey() {
+        byte[] key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    /**
+     * @return the Base64 encoding of the IV, ciphertext and MAC of the
+     *         UTF-8 bytes of the given string
+     */
+    public String encrypt(String plaintext) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        mRandom.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, mEncryptionKey,
+                new IvParameterSpec(iv));
+        byte[] ciphertext = cipher.doFinal(utf8(plaintext));
+
+        byte[] out = new byte[IV_LENGTH + ciphertext.length + MAC_LENGTH];
+        System.arraycopy(iv, 0, out, 0, IV_LENGTH);
+        System.arraycopy(ciphertext, 0, out, IV_LENGTH, ciphertext.length);
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(mMacKey);
+        mac.update(out, 0, IV_LENGTH + ciphertext.length);
+        System.arraycopy(mac.doFinal(), 0, out, IV_LENGTH + ciphertext.length,
+                MAC_LENGTH);
+        return Base64.encodeToString(out, Base64.NO_WRAP);
+    }
+
+    /**
+     * Decrypt a string returned by encrypt().
+     *
+     * @throws GeneralSecurityException
+     *             if the string was not encrypted with the same key or was
+     *             modified
+     */
+    public String decrypt(String encrypted) throws GeneralSecurityException {
+        byte[] in;
+        try {
+            in = Base64.decode(encrypted, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Invalid encoding");
+        }
+        int length = in.length - IV_LENGTH - MAC_LENGTH;
+        if (length <= 0) {
+            throw new GeneralSecurityException("Truncated ciphertext");
+        }
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(mMacKey);
+        mac.update(in, 0, IV_LENGTH + length);
+        byte[] expected = mac.doFinal();
+        // compare in constant time
+        int diff = 0;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            diff |= expected[i] ^ in[IV_LENGTH + length + i];
+        }
+        if (diff != 0) {
+            throw new GeneralSecurityException("MAC mismatch");
+        }
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, mEncryptionKey,
+                new IvParameterSpec(in, 0, IV_LENGTH));
+        byte[] plaintext = cipher.doFinal(in, IV_LENGTH, length);
+        try {
+            return new String(plaintext, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] derive(byte[] masterKey, int purpose)
+            throws GeneralSecurityException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(masterKey);
+        digest.update((byte) purpose);
+        return digest.digest();
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+/**
+ * Immutable snapshot of a session: the access token, its expiration time
+ * and when the token was last set. A new snapshot is created on each change,
+ * so a reader always sees a token together with its own expiration time.
+ */
+public final class SessionState {
+
+    /** No session. */
+    public static final SessionState EMPTY = new SessionState(null, 0, 0);
+
+    private final String mAccessToken;
+    private final long mAccessExpires;
+    private final long mLastAccessUpdate;
+
+    /**
+     * @param accessToken
+     *            OAuth 2.0 access token, or null if no session exists
+     * @param accessExpires
+     *            expiration time in milliseconds since Unix epoch, or 0 if
+     *            the session doesn't expire
+     * @param lastAccessUpdate
+     *            time the token was set, in milliseconds since Unix epoch
+     */
+    public SessionState(String accessToken, long accessExpires,
+                        long lastAccessUpdate) {
+        mAccessToken = accessToken;
+        mAccessExpires = accessExpires;
+        mLastAccessUpdate = lastAccessUpdate;
+    }
+
+    public String getAccessToken() {
+        return mAccessToken;
+    }
+
+    public long getAccessExpires() {
+        return mAccessExpires;
+    }
+
+    public long getLastAccessUpdate() {
+        return mLastAccessUpdate;
+    }
+
+    /**
+     * @return whether the session has a token that is not expired at the
+     *         given time
+     */
+    public boolean isValid(long now) {
+        return mAccessToken != null
+                && (mAccessExpires == 0 || now < mAccessExpires);
+    }
+
+    /**
+     * @return a copy of this state with the given token, set at the given
+     *         time, and the same expiration time
+     */
+    public SessionState withAccessToken(String accessToken, long now) {
+        return new SessionState(accessToken, mAccessExpires, now);
+    }
+
+    /**
+     * @return a copy of this state with the given expiration time
+     */
+    public SessionState withAccessExpires(long accessExpires) {
+        if (accessExpires == mAccessExpires) {
+            return this;
+        }
+        return new SessionState(mAccessToken, accessExpires,
+                mLastAccessUpdate);
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connect and read timeouts applied to API requests.
+ *
+ * A policy holds a pair of default timeouts plus optional overrides for
+ * specific endpoints. An endpoint is either a graph path (e.g. "me/photos")
+ * or, for the old REST API, the value of the "method" parameter (e.g.
+ * "photos.upload"). When looking up an endpoint the full path is tried
+ * first, then its last segment, so an override registered for "photos"
+ * applies to "me/photos" as well as to "[album_id]/photos".
+ *
+ * All timeouts are in milliseconds; zero means wait forever.
+ */
+public class TimeoutPolicy {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT = 30 * 1000;
+
+    private volatile int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile int mReadTimeout = DEFAULT_READ_TIMEOUT;
+    private final Map<String, int[]> mOverrides =
+            new ConcurrentHashMap<String, int[]>();
+
+    /**
+     * Set the timeouts used by endpoints without an override.
+     *
+     * @param connectTimeout
+     *            time to wait for the connection to be established
+     * @param readTimeout
+     *            time to wait for data once connected
+     */
+    public void setDefaultTimeouts(int connectTimeout, int readTimeout) {
+        checkTimeouts(connectTimeout, readTimeout);
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    /**
+     * Override the timeouts for the given endpoint, e.g. to give uploads
+     * to "photos" or "videos" more time than regular requests.
+     *
+     * @param endpoint
+     *            graph path, last graph path segment or REST method name
+     * @param connectTimeout
+     *            time to wait for the connection to be established
+     * @param readTimeout
+     *            time to wait for data once connected
+     */
+    public void setTimeouts(String endpoint, int connectTimeout,
+                            int readTimeout) {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("endpoint must not be null");
+        }
+        checkTimeouts(connectTimeout, readTimeout);
+        mOverrides.put(endpoint, new int[] {connectTimeout, readTimeout});
+    }
+
+    /**
+     * Remove the override for the given endpoint, if any.
+     */
+    public void removeTimeouts(String endpoint) {
+        mOverrides.remove(endpoint);
+    }
+
+    public int getConnectTimeout(String endpoint) {
+        int[] override = lookup(endpoint);
+        return override != null ? override[0] : mConnectTimeout;
+    }
+
+    public int getReadTimeout(String endpoint) {
+        int[] override = lookup(endpoint);
+        return override != null ? override[1] : mReadTimeout;
+    }
+
+    private int[] lookup(String endpoint) {
+        if (endpoint == null || mOverrides.isEmpty()) {
+            return null;
+        }
+        int[] override = mOverrides.get(endpoint);
+        if (override == null) {
+            int slash = endpoint.lastIndexOf('/');
+            if (slash >= 0 && slash < endpoint.length() - 1) {
+                override = mOverrides.get(endpoint.substring(slash + 1));
+            }
+        }
+        return override;
+    }
+
+    private static void checkTimeouts(int connectTimeout, int readTimeout) {
+        if (connectTimeout < 0 || readTimeout < 0) {
+            throw new IllegalArgumentException("timeouts must not be negative");
+        }
+    }
+
+}
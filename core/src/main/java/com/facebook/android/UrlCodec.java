@@ -0,0 +1,243 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Encoding and decoding of URL query strings in
+ * application/x-www-form-urlencoded format, using UTF-8.
+ *
+ * The output is identical to that of java.net.URLEncoder with UTF-8, but
+ * strings are encoded in a single pass straight into the caller's builder,
+ * without temporary Strings or byte arrays. Likewise query strings are
+ * parsed by a single scan, without regular expressions or java.net.URL,
+ * and only keys and values that contain escapes go through decoding.
+ */
+public final class UrlCodec {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // Characters left as is by the encoder, indexed by character code.
+    private static final boolean[] SAFE = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            SAFE[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            SAFE[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            SAFE[c] = true;
+        }
+        SAFE['.'] = true;
+        SAFE['-'] = true;
+        SAFE['*'] = true;
+        SAFE['_'] = true;
+    }
+
+    private UrlCodec() {}
+
+    /**
+     * Append the encoded form of a string to a builder.
+     *
+     * @param s the string to encode
+     * @param out the builder receiving the encoded string
+     */
+    public static void encode(String s, StringBuilder out) {
+        int length = s.length();
+        int i = 0;
+        // fast path: most keys and values need no encoding at all
+        while (i < length) {
+            char c = s.charAt(i);
+            if (c >= 128 || !SAFE[c]) {
+                break;
+            }
+            i++;
+        }
+        if (i == length) {
+            out.append(s);
+            return;
+        }
+        out.append(s, 0, i);
+
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 128) {
+                if (SAFE[c]) {
+                    out.append(c);
+                } else if (c == ' ') {
+                    out.append('+');
+                } else {
+                    appendEscaped(c, out);
+                }
+            } else if (c < 0x800) {
+                appendEscaped(0xC0 | (c >> 6), out);
+                appendEscaped(0x80 | (c & 0x3F), out);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                appendEscaped(0xF0 | (codePoint >> 18), out);
+                appendEscaped(0x80 | ((codePoint >> 12) & 0x3F), out);
+                appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), out);
+                appendEscaped(0x80 | (codePoint & 0x3F), out);
+            } else if (Character.isHighSurrogate(c)
+                    || Character.isLowSurrogate(c)) {
+                // unpaired surrogate: replaced by '?' like URLEncoder does
+                appendEscaped('?', out);
+            } else {
+                appendEscaped(0xE0 | (c >> 12), out);
+                appendEscaped(0x80 | ((c >> 6) & 0x3F), out);
+                appendEscaped(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+    /**
+     * Append the String parameters as a query string to a builder, e.g. one
+     * that already holds the URL followed by '?'. Binary parameters are
+     * skipped.
+     */
+    public static void encodeQuery(RequestParams params, StringBuilder out) {
+        boolean first = true;
+        for (int i = 0, size = params.size(); i < size; i++) {
+            String value = params.getString(i);
+            if (value == null) {
+                continue;
+            }
+            if (first) first = false; else out.append('&');
+            encode(params.getKey(i), out);
+            out.append('=');
+            encode(value, out);
+        }
+    }
+
+    /**
+     * Receives the parameters found by parseQuery() and parseUrl().
+     */
+    public static interface ParameterHandler {
+        public void onParameter(String key, String value);
+    }
+
+    /**
+     * Parse the query and fragment parameters of a URL, e.g. a redirect to
+     * "fbconnect://success?a=1#access_token=...". Query parameters are
+     * reported first, then fragment parameters.
+     *
+     * @param url the URL to parse
+     * @param handler receives each parameter
+     */
+    public static void parseUrl(String url, ParameterHandler handler) {
+        int hash = url.indexOf('#');
+        int queryEnd = hash >= 0 ? hash : url.length();
+        int question = url.indexOf('?');
+        if (question >= 0 && question < queryEnd) {
+            parseQuery(url, question + 1, queryEnd, handler);
+        }
+        if (hash >= 0) {
+            parseQuery(url, hash + 1, url.length(), handler);
+        }
+    }
+
+    /**
+     * Parse "key=value" pairs separated by '&' from a range of a string.
+     * The value extends to the next '&', so it may itself contain '='.
+     * Pairs without a value are ignored.
+     *
+     * @param s the string holding the query
+     * @param start index of the first character of the query
+     * @param end index after the last character of the query
+     * @param handler receives each parameter
+     */
+    public static void parseQuery(String s, int start, int end,
+                                  ParameterHandler handler) {
+        int pairStart = start;
+        while (pairStart < end) {
+            int pairEnd = s.indexOf('&', pairStart);
+            if (pairEnd < 0 || pairEnd > end) {
+                pairEnd = end;
+            }
+            int equals = s.indexOf('=', pairStart);
+            if (equals >= 0 && equals < pairEnd - 1) {
+                handler.onParameter(decode(s, pairStart, equals),
+                        decode(s, equals + 1, pairEnd));
+            }
+            pairStart = pairEnd + 1;
+        }
+    }
+
+    /**
+     * Decode a range of a form encoded string. Ranges without escapes are
+     * returned as a plain substring. Malformed escapes are kept as is.
+     */
+    public static String decode(String s, int start, int end) {
+        int i = start;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '+') {
+                break;
+            }
+            i++;
+        }
+        if (i == end) {
+            return s.substring(start, end);
+        }
+
+        // worst case every character is a single byte escape
+        byte[] bytes = new byte[(end - start) * 3];
+        int length = 0;
+        for (i = start; i < end; i++) {
+            char c = s.charAt(i);
+            int hi, lo;
+            if (c == '+') {
+                bytes[length++] = ' ';
+            } else if (c == '%' && i + 2 < end
+                    && (hi = Character.digit(s.charAt(i + 1), 16)) >= 0
+                    && (lo = Character.digit(s.charAt(i + 2), 16)) >= 0) {
+                bytes[length++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else {
+                // not expected in an encoded string: keep the character
+                length = appendUtf8(c, bytes, length);
+            }
+        }
+        try {
+            return new String(bytes, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int appendUtf8(char c, byte[] bytes, int length) {
+        if (c < 0x800) {
+            bytes[length++] = (byte) (0xC0 | (c >> 6));
+        } else {
+            bytes[length++] = (byte) (0xE0 | (c >> 12));
+            bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        }
+        bytes[length++] = (byte) (0x80 | (c & 0x3F));
+        return length;
+    }
+
+    private static void appendEscaped(int b, StringBuilder out) {
+        out.append('%').append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+    }
+
+}
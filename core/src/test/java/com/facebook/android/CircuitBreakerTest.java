@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10, 4, 50, 1000L);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensAtFailurePercent() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10, 4, 50, 1000L);
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void oldOutcomesLeaveTheWindow() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 75, 1000L);
+        breaker.onFailure();
+        breaker.onFailure();
+        for (int i = 0; i < 4; i++) {
+            breaker.onSuccess();
+        }
+        // the two failures were pushed out of the window
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void probeClosesOnSuccess() {
+        CircuitBreaker breaker = openBreaker();
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.STATE_HALF_OPEN, breaker.getState());
+        // a single probe at a time
+        assertFalse(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void probeReopensOnFailure() {
+        CircuitBreaker breaker = openBreaker();
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidSettings() {
+        new CircuitBreaker("test", 4, 5, 50, 1000L);
+    }
+
+    /**
+     * @return a breaker that opened and may probe right away
+     */
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, 1, 100, 0L);
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+        return breaker;
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.net.MalformedURLException;
+
+import org.junit.Test;
+
+public class GraphClientTest {
+
+    @Test
+    public void malformedUrlsDoNotOpenBreaker() throws Exception {
+        GraphClient client = new GraphClient(null, null, null);
+        client.setEndpoints("bogus://graph/", "bogus://restserver");
+        for (int i = 0; i < 20; i++) {
+            try {
+                client.execute(null, "me", RequestParams.EMPTY, "GET");
+                fail();
+            } catch (MalformedURLException e) {
+                // expected
+            }
+        }
+        assertEquals(CircuitBreaker.STATE_CLOSED,
+                client.getGraphCircuitBreaker().getState());
+    }
+
+    @Test
+    public void runtimeExceptionsDoNotOpenBreaker() throws Exception {
+        GraphClient client = new GraphClient(null, null, null);
+        // not an http connection
+        client.setEndpoints("file:///graph/", "file:///restserver");
+        for (int i = 0; i < 20; i++) {
+            try {
+                client.execute(null, "me", RequestParams.EMPTY, "GET");
+                fail();
+            } catch (RuntimeException e) {
+                // expected
+            }
+        }
+        assertEquals(CircuitBreaker.STATE_CLOSED,
+                client.getGraphCircuitBreaker().getState());
+    }
+
+}
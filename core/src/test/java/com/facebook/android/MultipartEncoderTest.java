@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MultipartEncoderTest {
+
+    private static final String BOUNDARY =
+            "3i2ndDfv2rTHiSisAbouNdArYfORhtTPEefj3q2f";
+
+    @Test
+    public void matchesLegacyLayout() throws Exception {
+        String[] fields = {
+                "message", "Hello \u00e9\u20ac\ud83d\ude00",
+                "method", "photos.upload",
+                "access_token", "abc|def",
+        };
+        byte[][] files = {{0, 1, 2, (byte) 0xFF}, {}};
+        assertArrayEquals(legacyBody(fields, files),
+                encoderBody(fields, files));
+    }
+
+    @Test
+    public void matchesLegacyLayoutWithoutFields() throws Exception {
+        String[] fields = {};
+        byte[][] files = {{42}};
+        assertArrayEquals(legacyBody(fields, files),
+                encoderBody(fields, files));
+    }
+
+    @Test
+    public void matchesLegacyLayoutForLongValues() throws Exception {
+        // longer than the encoder's buffer, with characters of every
+        // UTF-8 length so that some straddle a buffer flush
+        String alphabet = "a\u00e9\u20ac\ud83d\ude00";
+        Random random = new Random(7);
+        StringBuilder value = new StringBuilder();
+        while (value.length() < 5000) {
+            int index = random.nextInt(4);
+            value.append(index == 3 ? alphabet.substring(3)
+                    : alphabet.substring(index, index + 1));
+        }
+        String[] fields = {"message", value.toString(), "name", value.toString()};
+        byte[][] files = {};
+        assertArrayEquals(legacyBody(fields, files),
+                encoderBody(fields, files));
+    }
+
+    private static byte[] encoderBody(String[] fields, byte[][] files)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MultipartEncoder encoder = new MultipartEncoder(out, BOUNDARY);
+        encoder.writeStart();
+        for (int i = 0; i < fields.length; i += 2) {
+            encoder.writeField(fields[i], fields[i + 1]);
+        }
+        encoder.writeFieldsEnd();
+        for (int i = 0; i < files.length; i++) {
+            encoder.writeFile("file" + i, files[i]);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The body as the SDK used to build it, with Strings, before
+     * MultipartEncoder.
+     */
+    private static byte[] legacyBody(String[] fields, byte[][] files)
+            throws Exception {
+        String endLine = "\r\n";
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(("--" + BOUNDARY + endLine).getBytes("UTF-8"));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i += 2) {
+            sb.append("Content-Disposition: form-data; name=\"" + fields[i] +
+                    "\"\r\n\r\n" + fields[i + 1]);
+            sb.append("\r\n" + "--" + BOUNDARY + "\r\n");
+        }
+        os.write(sb.toString().getBytes("UTF-8"));
+        os.write((endLine + "--" + BOUNDARY + endLine).getBytes("UTF-8"));
+        for (int i = 0; i < files.length; i++) {
+            os.write(("Content-Disposition: form-data; filename=\"" + "file" + i
+                    + "\"" + endLine).getBytes("UTF-8"));
+            os.write(("Content-Type: content/unknown" + endLine + endLine)
+                    .getBytes("UTF-8"));
+            os.write(files[i]);
+            os.write((endLine + "--" + BOUNDARY + endLine).getBytes("UTF-8"));
+        }
+        return os.toByteArray();
+    }
+
+}
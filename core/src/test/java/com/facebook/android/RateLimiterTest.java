@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void allowsBurstThenAsksToWait() {
+        RateLimiter limiter = new RateLimiter(10, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("key"));
+        }
+        long wait = limiter.tryAcquire("key");
+        assertTrue("wait was " + wait, wait > 0 && wait <= 101);
+    }
+
+    @Test
+    public void tryAcquireDoesNotGoIntoDebt() {
+        RateLimiter limiter = new RateLimiter(10, 1);
+        assertEquals(0, limiter.tryAcquire("key"));
+        long first = limiter.tryAcquire("key");
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire("key");
+        }
+        // refused attempts did not push the next token further away
+        assertTrue(limiter.tryAcquire("key") <= first);
+    }
+
+    @Test
+    public void releaseGivesTokenBack() {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        assertEquals(0, limiter.tryAcquire("key"));
+        limiter.release("key");
+        assertEquals(0, limiter.tryAcquire("key"));
+    }
+
+    @Test
+    public void keysAreIndependent() {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("b"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void acquireWaitsForNextToken() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 1);
+        long start = System.nanoTime();
+        limiter.acquire("key");
+        limiter.acquire("key");
+        limiter.acquire("key");
+        long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+        assertTrue("elapsed " + elapsedMillis, elapsedMillis >= 90);
+    }
+
+    @Test
+    public void throttlingHalvesRateUntilSuccessesRaiseIt() {
+        RateLimiter limiter = new RateLimiter(32, 1);
+        assertEquals(32.0, limiter.getRate("key"), 0.0);
+        limiter.onThrottled("key");
+        assertEquals(16.0, limiter.getRate("key"), 0.0);
+        limiter.onThrottled("key");
+        assertEquals(8.0, limiter.getRate("key"), 0.0);
+        limiter.onSuccess("key");
+        assertEquals(10.0, limiter.getRate("key"), 0.0);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSuccess("key");
+        }
+        assertEquals(32.0, limiter.getRate("key"), 0.0);
+    }
+
+    @Test
+    public void rateNeverDropsBelowMinimum() {
+        RateLimiter limiter = new RateLimiter(32, 1);
+        for (int i = 0; i < 20; i++) {
+            limiter.onThrottled("key");
+        }
+        assertEquals(1.0, limiter.getRate("key"), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidSettings() {
+        new RateLimiter(0, 1);
+    }
+
+}
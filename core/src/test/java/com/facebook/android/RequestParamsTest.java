@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RequestParamsTest {
+
+    @Test
+    public void keepsInsertionOrderAndConvertsValues() {
+        RequestParams params = new RequestParams.Builder()
+                .put("b", "x")
+                .put("a", 1)
+                .put("c", 2L)
+                .put("d", true)
+                .build();
+        assertEquals(4, params.size());
+        assertEquals("b", params.getKey(0));
+        assertEquals("a", params.getKey(1));
+        assertEquals("1", params.getString("a"));
+        assertEquals("2", params.getString("c"));
+        assertEquals("true", params.getString("d"));
+        assertEquals(-1, params.indexOf("e"));
+        assertNull(params.getString("e"));
+    }
+
+    @Test
+    public void putReplacesValueInPlace() {
+        RequestParams params = new RequestParams.Builder()
+                .put("a", "1")
+                .put("b", "2")
+                .put("a", "3")
+                .build();
+        assertEquals(2, params.size());
+        assertEquals(0, params.indexOf("a"));
+        assertEquals("3", params.getString(0));
+    }
+
+    @Test
+    public void binaryValuesAreNotStrings() {
+        byte[] data = {1, 2, 3};
+        RequestParams params = new RequestParams.Builder()
+                .put("picture", data)
+                .build();
+        assertTrue(params.isBinary(0));
+        assertNull(params.getString(0));
+        assertArrayEquals(data, params.getBytes(0));
+    }
+
+    @Test
+    public void builtInstancesDoNotChange() {
+        RequestParams.Builder builder = new RequestParams.Builder(1);
+        RequestParams first = builder.put("a", "1").build();
+        builder.put("a", "2").put("b", "3").remove("a");
+        RequestParams second = builder.build();
+        builder.clear().put("c", "4");
+
+        assertEquals(1, first.size());
+        assertEquals("1", first.getString("a"));
+        assertEquals(1, second.size());
+        assertEquals("3", second.getString("b"));
+        assertFalse(second.containsKey("a"));
+    }
+
+    @Test
+    public void buildUponCopies() {
+        RequestParams params = new RequestParams.Builder().put("a", "1").build();
+        RequestParams extended = params.buildUpon().put("b", "2").build();
+        assertEquals(1, params.size());
+        assertEquals(2, extended.size());
+        assertEquals("a", extended.getKey(0));
+    }
+
+    @Test
+    public void emptyBuilderReturnsEmpty() {
+        assertSame(RequestParams.EMPTY, new RequestParams.Builder().build());
+        assertTrue(RequestParams.EMPTY.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullValues() {
+        new RequestParams.Builder().put("a", (String) null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsInvalidIndex() {
+        new RequestParams.Builder().put("a", "1").build().getKey(1);
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RequestSchedulerTest {
+
+    private final List<String> mRun =
+            Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void runsHigherPrioritiesFirstInSubmissionOrder() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(1);
+        CountDownLatch release = blockWorker(scheduler);
+        CountDownLatch done = new CountDownLatch(5);
+        scheduler.execute(record("background", done),
+                RequestScheduler.PRIORITY_BACKGROUND);
+        scheduler.execute(record("normal1", done),
+                RequestScheduler.PRIORITY_NORMAL);
+        scheduler.execute(record("interactive", done),
+                RequestScheduler.PRIORITY_INTERACTIVE);
+        scheduler.execute(record("normal2", done),
+                RequestScheduler.PRIORITY_NORMAL);
+        scheduler.requeue(record("requeued", done),
+                RequestScheduler.PRIORITY_NORMAL);
+        assertEquals(5, scheduler.getPendingCount());
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("[interactive, requeued, normal1, normal2, background]",
+                mRun.toString());
+    }
+
+    @Test
+    public void pausedBackgroundTasksWaitForResume() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(2);
+        scheduler.pauseBackground();
+        assertTrue(scheduler.isBackgroundPaused());
+        CountDownLatch background = new CountDownLatch(1);
+        CountDownLatch normal = new CountDownLatch(1);
+        scheduler.execute(record("background", background),
+                RequestScheduler.PRIORITY_BACKGROUND);
+        scheduler.execute(record("normal", normal),
+                RequestScheduler.PRIORITY_NORMAL);
+
+        assertTrue(normal.await(5, TimeUnit.SECONDS));
+        assertFalse(background.await(100, TimeUnit.MILLISECONDS));
+        scheduler.resumeBackground();
+        assertTrue(background.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void onlyBackgroundTasksYield() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(1);
+        assertFalse(scheduler.shouldYield(RequestScheduler.PRIORITY_BACKGROUND));
+        scheduler.pauseBackground();
+        assertTrue(scheduler.shouldYield(RequestScheduler.PRIORITY_BACKGROUND));
+        assertFalse(scheduler.shouldYield(RequestScheduler.PRIORITY_NORMAL));
+        scheduler.resumeBackground();
+
+        // more urgent work waiting while no worker is idle
+        CountDownLatch release = blockWorker(scheduler);
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.execute(record("interactive", done),
+                RequestScheduler.PRIORITY_INTERACTIVE);
+        assertTrue(scheduler.shouldYield(RequestScheduler.PRIORITY_BACKGROUND));
+        assertFalse(scheduler.shouldYield(
+                RequestScheduler.PRIORITY_INTERACTIVE));
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void backgroundTasksDoNotYieldToWorkWithAFreeWorker()
+            throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(2);
+        CountDownLatch release = blockWorker(scheduler);
+        // whether or not the second worker has taken it yet, the task does
+        // not need the worker of a background task
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.execute(record("interactive", done),
+                RequestScheduler.PRIORITY_INTERACTIVE);
+        assertFalse(scheduler.shouldYield(RequestScheduler.PRIORITY_BACKGROUND));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void delayedRequeueDoesNotHoldWorker() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(1);
+        CountDownLatch delayed = new CountDownLatch(1);
+        CountDownLatch other = new CountDownLatch(1);
+        long start = System.nanoTime();
+        scheduler.requeue(record("delayed", delayed),
+                RequestScheduler.PRIORITY_INTERACTIVE, 200L);
+        scheduler.execute(record("other", other),
+                RequestScheduler.PRIORITY_BACKGROUND);
+
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+        assertTrue(delayed.await(5, TimeUnit.SECONDS));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+        assertTrue("elapsed " + elapsedMillis, elapsedMillis >= 190);
+        assertEquals("[other, delayed]", mRun.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownPriority() {
+        new RequestScheduler().execute(record("task", new CountDownLatch(1)), 7);
+    }
+
+    /**
+     * Occupy a worker of the scheduler until the returned latch is
+     * released.
+     */
+    private static CountDownLatch blockWorker(RequestScheduler scheduler)
+            throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, RequestScheduler.PRIORITY_INTERACTIVE);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private Runnable record(final String name, final CountDownLatch done) {
+        return new Runnable() {
+            public void run() {
+                mRun.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.android;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class UrlCodecTest {
+
+    // ASCII, multi-byte characters and surrogates, which random picks
+    // combine into pairs as well as lone halves
+    private static final String ALPHABET = "aZ09.-*_ ~!#$&'()+,/:;=?@[]%\t"
+            + "\u00e9\u00df\u20ac\u4e2d\ud83d\ude00\ud800\udc00\ud83d\ude00";
+
+    @Test
+    public void encodeMatchesUrlEncoder() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            String s = randomString(random);
+            StringBuilder out = new StringBuilder();
+            UrlCodec.encode(s, out);
+            assertEquals(s, URLEncoder.encode(s, "UTF-8"), out.toString());
+        }
+    }
+
+    @Test
+    public void decodeMatchesUrlDecoder() throws Exception {
+        Random random = new Random(43);
+        for (int i = 0; i < 10000; i++) {
+            String s = randomString(random);
+            String encoded = URLEncoder.encode(s, "UTF-8");
+            String padded = "&" + encoded + "&";
+            assertEquals(encoded, URLDecoder.decode(encoded, "UTF-8"),
+                    UrlCodec.decode(padded, 1, padded.length() - 1));
+        }
+    }
+
+    @Test
+    public void encodeAppendsToBuilder() {
+        StringBuilder out = new StringBuilder("q=");
+        UrlCodec.encode("a b", out);
+        assertEquals("q=a+b", out.toString());
+    }
+
+    @Test
+    public void encodeQuerySkipsBinaryParameters() {
+        RequestParams params = new RequestParams.Builder()
+                .put("q", "a&b")
+                .put("picture", new byte[] {1, 2})
+                .put("limit", 25)
+                .build();
+        StringBuilder out = new StringBuilder();
+        UrlCodec.encodeQuery(params, out);
+        assertEquals("q=a%26b&limit=25", out.toString());
+    }
+
+    @Test
+    public void decodeKeepsMalformedEscapes() {
+        assertEquals("100%", UrlCodec.decode("100%", 0, 4));
+        assertEquals("%zz a", UrlCodec.decode("%zz+a", 0, 5));
+    }
+
+    @Test
+    public void parseUrlReportsQueryThenFragment() {
+        List<String> found = parse(
+                "fbconnect://success?a=1&b=x%3Dy#access_token=t+1&expires_in=0");
+        assertEquals("[a=1, b=x=y, access_token=t 1, expires_in=0]",
+                found.toString());
+    }
+
+    @Test
+    public void parseUrlIgnoresPairsWithoutValue() {
+        List<String> found = parse("http://h/p?a&b=&c=v=w#");
+        assertEquals("[c=v=w]", found.toString());
+    }
+
+    private static List<String> parse(String url) {
+        final List<String> found = new ArrayList<String>();
+        UrlCodec.parseUrl(url, new UrlCodec.ParameterHandler() {
+            public void onParameter(String key, String value) {
+                found.add(key + "=" + value);
+            }
+        });
+        return found;
+    }
+
+    private static String randomString(Random random) {
+        int length = random.nextInt(16);
+        StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            s.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return s.toString();
+    }
+
+}